@@ -0,0 +1,144 @@
+package com.hz.classfinal.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+
+/**
+ * SpringBoot 风格 jar 的最小启动器，复制到测试应用中作为 Main-Class
+ * <p>
+ * 从 {@code BOOT-INF/classes} 和 {@code BOOT-INF/lib/*.jar} 加载类，CodeSource 与 SpringBoot 一致
+ * （{@code jar:file:/app.jar!/BOOT-INF/lib/x.jar!/}），运行 Start-Class 的 main 方法后输出内存和类数量。
+ * 只依赖 JDK，不能有内部类。
+ *
+ * @author roseboy
+ */
+public class BootLauncher extends ClassLoader {
+
+    //类名 -> 类的字节
+    private final Map<String, byte[]> classes = new HashMap<>();
+    //类名 -> 所在的 classes 目录或 lib jar
+    private final Map<String, ProtectionDomain> domains = new HashMap<>();
+    //资源路径 -> 内容
+    private final Map<String, byte[]> resources = new HashMap<>();
+
+    BootLauncher(File jar, ClassLoader parent) throws IOException {
+        super(parent);
+        String base = "jar:" + jar.toURI() + "!/";
+        try (JarFile jarFile = new JarFile(jar)) {
+            ProtectionDomain classesDomain = domain(base + "BOOT-INF/classes!/");
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (name.startsWith("BOOT-INF/classes/")) {
+                    add(name.substring("BOOT-INF/classes/".length()),
+                            readAll(jarFile.getInputStream(entry)), classesDomain);
+                } else if (name.startsWith("BOOT-INF/lib/") && name.endsWith(".jar")) {
+                    ProtectionDomain libDomain = domain(base + name + "!/");
+                    byte[] libBytes = readAll(jarFile.getInputStream(entry));
+                    try (JarInputStream lib = new JarInputStream(new ByteArrayInputStream(libBytes))) {
+                        JarEntry libEntry;
+                        while ((libEntry = lib.getNextJarEntry()) != null) {
+                            if (!libEntry.isDirectory()) {
+                                add(libEntry.getName(), readAll(lib), libDomain);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        File jar = new File(BootLauncher.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        String startClass;
+        try (JarFile jarFile = new JarFile(jar)) {
+            startClass = jarFile.getManifest().getMainAttributes().getValue("Start-Class");
+        }
+        BootLauncher loader = new BootLauncher(jar, BootLauncher.class.getClassLoader());
+        Thread.currentThread().setContextClassLoader(loader);
+        Class<?> mainClass = loader.loadClass(startClass);
+        mainClass.getMethod("main", String[].class).invoke(null, (Object) args);
+        System.out.println("STATS " + rssKb() + " " + ManagementFactory.getClassLoadingMXBean().getLoadedClassCount());
+        System.out.flush();
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        byte[] bytes;
+        synchronized (classes) {
+            bytes = classes.remove(path);
+        }
+        if (bytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length, domains.get(path));
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        byte[] bytes = resources.get(name.startsWith("/") ? name.substring(1) : name);
+        return bytes != null ? new ByteArrayInputStream(bytes) : super.getResourceAsStream(name);
+    }
+
+    private void add(String name, byte[] bytes, ProtectionDomain domain) {
+        if (name.endsWith(".class")) {
+            classes.put(name, bytes);
+            domains.put(name, domain);
+        } else {
+            resources.put(name, bytes);
+        }
+    }
+
+    private ProtectionDomain domain(String url) throws IOException {
+        return new ProtectionDomain(new CodeSource(new URL(url), (Certificate[]) null), null, this, null);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 当前进程的常驻内存，只支持 Linux
+     *
+     * @return KB，不支持时返回 -1
+     */
+    private static long rssKb() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+        }
+        return -1;
+    }
+}
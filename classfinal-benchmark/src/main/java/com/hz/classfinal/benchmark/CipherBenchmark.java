@@ -0,0 +1,103 @@
+package com.hz.classfinal.benchmark;
+
+import com.hz.classfinal.util.CipherRegistry;
+import com.hz.classfinal.util.EntryCipher;
+import com.hz.classfinal.util.SysUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比所有已注册加密算法的基准测试：吞吐量、不同大小文件的解密延迟和内存分配
+ * <p>
+ * 运行：{@code java -cp classfinal-benchmark/target/benchmarks.jar com.hz.classfinal.benchmark.CipherBenchmark}，
+ * 自动测试 {@link CipherRegistry} 中的全部算法，包括 classpath 中通过 SPI 注册的算法；
+ * 也可以用 {@code java -jar benchmarks.jar CipherBenchmark -p cipher=MD5,AES_GCM -prof gc} 指定算法。
+ *
+ * @author roseboy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CipherBenchmark {
+
+    //密码
+    private static final String PASSWORD = "123456";
+    //文件名
+    private static final String NAME = "com.demo.Test";
+
+    /**
+     * 算法ID
+     */
+    @Param({"MD5", "AES", "AES_GCM"})
+    public String cipher;
+
+    /**
+     * 文件大小，覆盖小类、普通类和大类
+     */
+    @Param({"512", "4096", "32768"})
+    public int size;
+
+    /**
+     * 是否绑定机器码
+     */
+    @Param({"false", "true"})
+    public boolean machine;
+
+    private EntryCipher entryCipher;
+    private byte[] plain;
+    private byte[] encrypted;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        char[] code = machine ? SysUtils.makeMarchinCode() : new char[0];
+        entryCipher = CipherRegistry.get(cipher).create(PASSWORD.toCharArray(), code);
+        plain = new byte[size];
+        new Random(size).nextBytes(plain);
+        encrypted = entryCipher.encrypt(plain.clone(), NAME);
+    }
+
+    /**
+     * 运行时的热点，实现可能直接修改输入，每次复制一份密文
+     */
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return entryCipher.decrypt(encrypted.clone(), NAME);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return entryCipher.encrypt(plain.clone(), NAME);
+    }
+
+    /**
+     * 用已注册的全部算法运行，附带 GC 分配统计
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(CipherBenchmark.class.getSimpleName())
+                .param("cipher", CipherRegistry.ids().toArray(new String[0]))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
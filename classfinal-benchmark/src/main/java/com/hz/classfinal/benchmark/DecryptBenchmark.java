@@ -0,0 +1,175 @@
+package com.hz.classfinal.benchmark;
+
+import com.hz.classfinal.AgentTransformer;
+import com.hz.classfinal.JarDecryptor;
+import com.hz.classfinal.util.SysUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 运行时解密热点的基准测试
+ * <p>
+ * 运行：{@code java -jar classfinal-benchmark/target/benchmarks.jar DecryptBenchmark -prof gc}
+ *
+ * @author roseboy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecryptBenchmark {
+
+    //密码
+    private static final String PASSWORD = "123456";
+
+    /**
+     * 加密的类数量
+     */
+    @Param({"200", "2000"})
+    public int classCount;
+
+    /**
+     * 每个类的方法数量
+     */
+    @Param({"8"})
+    public int methodsPerClass;
+
+    /**
+     * 加密方式：password 密码，machine 机器码+密码，nopwd 无密码
+     */
+    @Param({"password", "machine", "nopwd"})
+    public String mode;
+
+    /**
+     * 是否加密前压缩，对比解压的开销
+     */
+    @Param({"false", "true"})
+    public boolean compress;
+
+    /**
+     * 加密方式
+     */
+    @Param({"MD5", "AES_GCM"})
+    public String type;
+
+    private File workDir;
+    private String rootPath;
+    private char[] password;
+    private String[] slashNames;
+    private String[] dotNames;
+    private AgentTransformer transformer;
+    private ProtectionDomain domain;
+    private ClassLoader loader;
+    private byte[] plainBuffer;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        workDir = SyntheticJar.tempDir();
+        SyntheticJar synthetic = new SyntheticJar(workDir);
+        File jar = synthetic.build(classCount, methodsPerClass);
+        char[] encryptPassword = "nopwd".equals(mode) ? new char[]{'#'} : PASSWORD.toCharArray();
+        char[] code = "machine".equals(mode) ? SysUtils.makeMarchinCode() : null;
+        File encrypted = SyntheticJar.encrypt(jar, encryptPassword, code, false, compress, type);
+        rootPath = encrypted.getAbsolutePath();
+        //无密码模式运行时以 # 为密码
+        password = "nopwd".equals(mode) ? new char[]{'#'} : PASSWORD.toCharArray();
+
+        List<String> names = synthetic.getClassNames();
+        slashNames = names.toArray(new String[0]);
+        dotNames = new String[slashNames.length];
+        for (int i = 0; i < slashNames.length; i++) {
+            dotNames[i] = slashNames[i].replace('/', '.');
+        }
+        transformer = new AgentTransformer(password, rootPath, new HashSet<>(names));
+        domain = new ProtectionDomain(new CodeSource(encrypted.toURI().toURL(), (Certificate[]) null), null);
+        loader = getClass().getClassLoader();
+        plainBuffer = new byte[0];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deleteAll(workDir);
+    }
+
+    /**
+     * 每个线程轮流解密不同的类
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        int next(int length) {
+            int i = index;
+            index = i + 1 == length ? 0 : i + 1;
+            return i;
+        }
+    }
+
+    @Benchmark
+    public byte[] doDecrypt(Cursor cursor) throws Exception {
+        return JarDecryptor.getInstance().doDecrypt(rootPath, dotNames[cursor.next(dotNames.length)], password);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] doDecryptThreads(Cursor cursor) throws Exception {
+        return doDecrypt(cursor);
+    }
+
+    @Benchmark
+    public byte[] transformHit(Cursor cursor) {
+        return transformer.transform(loader, slashNames[cursor.next(slashNames.length)], null, domain, plainBuffer);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] transformHitThreads(Cursor cursor) {
+        return transformHit(cursor);
+    }
+
+    /**
+     * 未加密的类，索引中查不到直接返回
+     */
+    @Benchmark
+    public byte[] transformMiss() {
+        return transformer.transform(loader, "java/util/ArrayList", null, domain, plainBuffer);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] transformMissThreads() {
+        return transformMiss();
+    }
+
+    private static void deleteAll(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,156 @@
+package com.hz.classfinal.benchmark;
+
+import com.hz.classfinal.util.CmdLineOption;
+import com.hz.classfinal.util.ConsoleLog;
+import com.hz.classfinal.util.IoUtils;
+import com.hz.classfinal.util.StrUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 端到端启动测试，对比未加密和加密后的应用
+ * <p>
+ * 生成 SpringBoot 风格的应用并加密，交替启动未加密和加密（-javaagent）的版本，统计启动到 main、
+ * 启动到全部类加载完成的耗时、常驻内存和类数量；加密/未加密的耗时比超过阈值时以非0退出，用于 CI。
+ * <pre>
+ * java -cp classfinal-benchmark/target/benchmarks.jar com.hz.classfinal.benchmark.StartupBenchmark \
+ *      -classes=5000 -libs=8 -runs=10 -threshold=3
+ * </pre>
+ *
+ * @author roseboy
+ */
+public class StartupBenchmark {
+
+    //密码
+    private static final String PASSWORD = "123456";
+
+    public static void main(String[] args) throws Exception {
+        CmdLineOption options = new CmdLineOption();
+        options.addOption("classes", true, "类数量");
+        options.addOption("libs", true, "依赖jar数量");
+        options.addOption("methods", true, "每个类的方法数量");
+        options.addOption("runs", true, "每个版本启动的次数");
+        options.addOption("threshold", true, "加密/未加密启动耗时比的上限，超过时以非0退出");
+        options.addOption("agent", true, "额外的agent参数，多个用逗号分隔");
+        options.parse(args);
+
+        int classes = Integer.parseInt(options.getOptionValue("classes", "2000"));
+        int libs = Integer.parseInt(options.getOptionValue("libs", "4"));
+        int methods = Integer.parseInt(options.getOptionValue("methods", "8"));
+        int runs = Integer.parseInt(options.getOptionValue("runs", "5"));
+        String threshold = options.getOptionValue("threshold");
+        String[] agentArgs = options.getOptionValues("agent");
+
+        File workDir = SyntheticJar.tempDir();
+        File plain = new SyntheticBootApp(workDir).build(classes, libs, methods);
+        File encrypted = SyntheticBootApp.encrypt(plain, PASSWORD.toCharArray());
+        ConsoleLog.log("测试应用: %d 个类, %d 个依赖jar, 未加密 %d KB, 加密 %d KB",
+                classes, libs, plain.length() / 1024, encrypted.length() / 1024);
+
+        StringBuilder agent = new StringBuilder("-javaagent:" + encrypted.getAbsolutePath() + "=-pwd=" + PASSWORD);
+        if (agentArgs != null) {
+            for (String arg : agentArgs) {
+                agent.append(' ').append(arg);
+            }
+        }
+        List<String> plainCmd = command(null, plain);
+        List<String> encryptedCmd = command(agent.toString(), encrypted);
+
+        //第一次启动预热文件缓存，不计入结果
+        launch(plainCmd);
+        launch(encryptedCmd);
+        List<Run> plainRuns = new ArrayList<>();
+        List<Run> encryptedRuns = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            plainRuns.add(launch(plainCmd));
+            encryptedRuns.add(launch(encryptedCmd));
+        }
+
+        ConsoleLog.println();
+        ConsoleLog.println("%-10s %14s %14s %12s %10s", "", "main(ms)", "ready(ms)", "RSS(KB)", "classes");
+        print("未加密", plainRuns);
+        print("加密", encryptedRuns);
+        double ratio = (double) median(encryptedRuns, 1) / Math.max(1, median(plainRuns, 1));
+        ConsoleLog.println("启动耗时比(ready，中位数): %.2f", ratio);
+
+        IoUtils.delete(workDir);
+        if (StrUtils.isNotEmpty(threshold) && ratio > Double.parseDouble(threshold)) {
+            ConsoleLog.error("启动耗时比 %.2f 超过阈值 %s", ratio, threshold);
+            System.exit(1);
+        }
+    }
+
+    private static List<String> command(String agent, File jar) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (agent != null) {
+            cmd.add(agent);
+        }
+        cmd.addAll(Arrays.asList("-jar", jar.getAbsolutePath()));
+        return cmd;
+    }
+
+    /**
+     * 启动一次应用，读取输出中的 MAIN、READY、STATS 标记
+     */
+    private static Run launch(List<String> cmd) throws IOException, InterruptedException {
+        Run run = new Run();
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        List<String> output = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long now = System.nanoTime();
+                output.add(line);
+                if (line.equals("MAIN")) {
+                    run.values[0] = (now - start) / 1000000;
+                } else if (line.startsWith("READY")) {
+                    run.values[1] = (now - start) / 1000000;
+                } else if (line.startsWith("STATS")) {
+                    String[] stats = line.split(" ");
+                    run.values[2] = Long.parseLong(stats[1]);
+                    run.values[3] = Long.parseLong(stats[2]);
+                }
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0 || run.values[1] == 0) {
+            throw new IllegalStateException("启动失败(" + exit + "): " + String.join("\n", output));
+        }
+        return run;
+    }
+
+    private static void print(String name, List<Run> runs) {
+        ConsoleLog.println("%-10s %14s %14s %12s %10s", name,
+                summary(runs, 0), summary(runs, 1), median(runs, 2), median(runs, 3));
+    }
+
+    /**
+     * 中位数/最大值
+     */
+    private static String summary(List<Run> runs, int index) {
+        long max = runs.stream().mapToLong(r -> r.values[index]).max().orElse(0);
+        return median(runs, index) + "/" + max;
+    }
+
+    private static long median(List<Run> runs, int index) {
+        long[] values = runs.stream().mapToLong(r -> r.values[index]).sorted().toArray();
+        return values.length == 0 ? 0 : values[values.length / 2];
+    }
+
+    /**
+     * 一次启动的结果：启动到 main、启动到 ready、RSS、类数量
+     */
+    static class Run {
+        final long[] values = new long[4];
+    }
+}
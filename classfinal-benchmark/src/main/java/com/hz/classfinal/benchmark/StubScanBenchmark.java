@@ -0,0 +1,133 @@
+package com.hz.classfinal.benchmark;
+
+import com.hz.classfinal.Constants;
+import com.hz.classfinal.util.IoUtils;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.MethodInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 加密后 jar 中清空方法体的类的扫描耗时，对比是否精简
+ * <p>
+ * 框架启动时按包扫描类（如 Spring 的组件扫描）会解析 jar 中的每个类，读取类名、父类、注解；
+ * 这里用 javassist 的 ClassFile 解析，与 ASM ClassReader 一样要读完整个常量池。启动时输出加密后 jar 和类的大小。
+ * <p>
+ * 运行：{@code java -jar classfinal-benchmark/target/benchmarks.jar StubScanBenchmark}
+ *
+ * @author roseboy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StubScanBenchmark {
+
+    /**
+     * 加密的类数量
+     */
+    @Param({"2000"})
+    public int classCount;
+
+    /**
+     * 每个类的方法数量
+     */
+    @Param({"8", "32"})
+    public int methodsPerClass;
+
+    /**
+     * 是否精简
+     */
+    @Param({"false", "true"})
+    public boolean compact;
+
+    private File workDir;
+    private byte[][] classes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        workDir = SyntheticJar.tempDir();
+        File jar = new SyntheticJar(workDir).build(classCount, methodsPerClass);
+        File encrypted = SyntheticJar.encrypt(jar, "123456".toCharArray(), null, false, false,
+                Constants.ENCRYPT_TYPE.name(), compact);
+
+        List<byte[]> list = new ArrayList<>();
+        long classBytes = 0;
+        try (ZipFile zip = new ZipFile(encrypted)) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith(SyntheticJar.PACKAGE.replace('.', '/'))
+                        && entry.getName().endsWith(Constants.CLASS_EXT)) {
+                    byte[] bytes = IoUtils.readBytes(zip.getInputStream(entry));
+                    classBytes += bytes.length;
+                    list.add(bytes);
+                }
+            }
+        }
+        classes = list.toArray(new byte[0][]);
+        System.out.printf("%ncompact=%s: jar %d 字节, %d 个类 %d 字节%n", compact, encrypted.length(),
+                classes.length, classBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deleteAll(workDir);
+    }
+
+    /**
+     * 解析所有类，读取类名、父类、接口和类与方法上的注解
+     */
+    @Benchmark
+    public int scan() throws IOException {
+        int found = 0;
+        for (byte[] bytes : classes) {
+            ClassFile cf = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytes)));
+            found += cf.getName().length() + cf.getSuperclass().length() + cf.getInterfaces().length;
+            if (cf.getAttribute(AnnotationsAttribute.visibleTag) != null) {
+                found++;
+            }
+            for (MethodInfo method : cf.getMethods()) {
+                if (method.getAttribute(AnnotationsAttribute.visibleTag) != null) {
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void deleteAll(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+}
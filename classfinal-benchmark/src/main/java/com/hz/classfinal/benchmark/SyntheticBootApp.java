@@ -0,0 +1,181 @@
+package com.hz.classfinal.benchmark;
+
+import com.hz.classfinal.JarEncryptor;
+import com.hz.classfinal.util.IoUtils;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * 生成 SpringBoot 风格的测试应用
+ * <p>
+ * 类分散在 {@code BOOT-INF/classes} 的多级包和 {@code BOOT-INF/lib} 下的多个 jar 中，
+ * 由 {@link BootLauncher} 启动；Start-Class 启动后输出 MAIN，加载并初始化所有类后输出 READY。
+ *
+ * @author roseboy
+ */
+public class SyntheticBootApp {
+
+    //生成的类的根包名
+    public static final String PACKAGE = "com.example";
+    //启动类
+    public static final String START_CLASS = PACKAGE + ".app.Application";
+    //所有类名的清单
+    static final String CLASS_LIST = "classes.txt";
+    //依赖 jar 中类的比例
+    static final double LIB_RATIO = 0.3;
+
+    private final File dir;
+
+    /**
+     * 构造方法
+     *
+     * @param dir 工作目录
+     */
+    public SyntheticBootApp(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 生成应用
+     *
+     * @param classCount      类数量
+     * @param libCount        依赖 jar 数量
+     * @param methodsPerClass 每个类的方法数量
+     * @return jar 文件
+     * @throws Exception 生成异常
+     */
+    public File build(int classCount, int libCount, int methodsPerClass) throws Exception {
+        ClassPool pool = new ClassPool(true);
+        int libClasses = libCount > 0 ? (int) (classCount * LIB_RATIO) : 0;
+        List<String> allNames = new ArrayList<>(classCount);
+
+        //依赖 jar
+        List<byte[]> libs = new ArrayList<>();
+        for (int l = 0; l < libCount; l++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (JarOutputStream lib = new JarOutputStream(bytes, manifest(null))) {
+                for (int i = l; i < libClasses; i += libCount) {
+                    String className = PACKAGE + ".lib" + l + ".p" + (i % 4) + ".Lib" + i;
+                    putEntry(lib, className.replace('.', '/') + ".class",
+                            SyntheticJar.makeClass(pool, className, methodsPerClass), false);
+                    allNames.add(className);
+                }
+            }
+            libs.add(bytes.toByteArray());
+        }
+
+        //应用自己的类，包的层级和数量接近普通项目
+        List<byte[]> appClasses = new ArrayList<>();
+        List<String> appNames = new ArrayList<>();
+        String[] layers = {"controller", "service", "service.impl", "repository", "model", "config", "util"};
+        for (int i = 0; i < classCount - libClasses; i++) {
+            String className = PACKAGE + ".app.m" + (i % 12) + "." + layers[i % layers.length] + ".App" + i;
+            appClasses.add(SyntheticJar.makeClass(pool, className, methodsPerClass));
+            appNames.add(className);
+            allNames.add(className);
+        }
+
+        File jar = new File(dir, "app-" + classCount + ".jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest(START_CLASS))) {
+            putEntry(out, BootLauncher.class.getName().replace('.', '/') + ".class", launcherBytes(), false);
+            putEntry(out, "BOOT-INF/classes/" + START_CLASS.replace('.', '/') + ".class", makeStartClass(pool), false);
+            for (int i = 0; i < appClasses.size(); i++) {
+                putEntry(out, "BOOT-INF/classes/" + appNames.get(i).replace('.', '/') + ".class", appClasses.get(i), false);
+            }
+            putEntry(out, "BOOT-INF/classes/" + CLASS_LIST,
+                    String.join("\n", allNames).getBytes(StandardCharsets.UTF_8), false);
+            for (int l = 0; l < libs.size(); l++) {
+                putEntry(out, "BOOT-INF/lib/lib" + l + ".jar", libs.get(l), true);
+            }
+        }
+        return jar;
+    }
+
+    /**
+     * 加密应用，应用的类和依赖 jar 都加密
+     *
+     * @param jar      应用
+     * @param password 密码
+     * @return 加密后的 jar
+     * @throws Exception 加密异常
+     */
+    public static File encrypt(File jar, char[] password) throws Exception {
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), password);
+        encryptor.setPackages(new ArrayList<>(Arrays.asList(PACKAGE)));
+        encryptor.setIncludeJars(new ArrayList<>(Arrays.asList("lib*.jar", "-")));
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        return new File(encryptor.doEncryptJar());
+    }
+
+    /**
+     * 启动类：输出 MAIN，按清单加载并初始化所有类，输出 READY
+     */
+    private static byte[] makeStartClass(ClassPool pool) throws Exception {
+        CtClass ct = pool.makeClass(START_CLASS);
+        ct.addMethod(CtNewMethod.make("public static void main(String[] args) throws Exception {"
+                + " System.out.println(\"MAIN\");"
+                + " ClassLoader cl = " + START_CLASS + ".class.getClassLoader();"
+                + " java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader("
+                + "     cl.getResourceAsStream(\"" + CLASS_LIST + "\"), \"UTF-8\"));"
+                + " String line; int n = 0;"
+                + " while ((line = reader.readLine()) != null) { Class.forName(line, true, cl); n++; }"
+                + " System.out.println(\"READY \" + n);"
+                + " }", ct));
+        byte[] bytes = ct.toBytecode();
+        ct.detach();
+        return bytes;
+    }
+
+    private static Manifest manifest(String startClass) {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (startClass != null) {
+            attributes.put(Attributes.Name.MAIN_CLASS, BootLauncher.class.getName());
+            attributes.putValue("Start-Class", startClass);
+        }
+        return manifest;
+    }
+
+    /**
+     * 写入一个文件，依赖 jar 和 SpringBoot 一样不压缩存储
+     */
+    private static void putEntry(JarOutputStream out, String name, byte[] bytes, boolean stored) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+    }
+
+    private static byte[] launcherBytes() throws IOException {
+        try (InputStream in = BootLauncher.class.getResourceAsStream(BootLauncher.class.getSimpleName() + ".class")) {
+            return IoUtils.readBytes(in);
+        }
+    }
+}
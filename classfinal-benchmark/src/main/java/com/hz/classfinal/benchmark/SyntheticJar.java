@@ -0,0 +1,157 @@
+package com.hz.classfinal.benchmark;
+
+import com.hz.classfinal.JarEncryptor;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * 生成测试用的 jar 并用 {@link JarEncryptor} 加密
+ *
+ * @author roseboy
+ */
+public class SyntheticJar {
+
+    //生成的类所在的包
+    public static final String PACKAGE = "com.example.bench";
+
+    private final File dir;
+    private final List<String> classNames = new ArrayList<>();
+
+    /**
+     * 构造方法
+     *
+     * @param dir 工作目录
+     */
+    public SyntheticJar(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 生成 jar
+     *
+     * @param classCount      类数量
+     * @param methodsPerClass 每个类的方法数量，决定类的大小
+     * @return jar 文件
+     * @throws Exception 生成异常
+     */
+    public File build(int classCount, int methodsPerClass) throws Exception {
+        File jar = new File(dir, "bench-" + classCount + ".jar");
+        ClassPool pool = new ClassPool(true);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            for (int i = 0; i < classCount; i++) {
+                //分散到多个子包中
+                String className = PACKAGE + ".p" + (i % 16) + ".Bench" + i;
+                out.putNextEntry(new JarEntry(className.replace('.', '/') + ".class"));
+                out.write(makeClass(pool, className, methodsPerClass));
+                out.closeEntry();
+                classNames.add(className.replace('.', '/'));
+            }
+        }
+        return jar;
+    }
+
+    /**
+     * 生成一个类，每个方法带有循环和分支，大小与普通业务类相当
+     *
+     * @param pool            ClassPool
+     * @param className       类名
+     * @param methodsPerClass 方法数量
+     * @return 类的字节
+     * @throws Exception 编译异常
+     */
+    public static byte[] makeClass(ClassPool pool, String className, int methodsPerClass) throws Exception {
+        CtClass ct = pool.makeClass(className);
+        ct.addField(CtField.make("private int value = " + className.length() + ";", ct));
+        ct.addField(CtField.make("private String name = \"" + className + "\";", ct));
+        for (int m = 0; m < methodsPerClass; m++) {
+            ct.addMethod(CtNewMethod.make("public int calc" + m + "(int a, int b) {"
+                    + " int r = a * " + (m + 1) + " + b;"
+                    + " for (int j = 0; j < a; j++) { r += j ^ value; }"
+                    + " if (r > " + (m * 31) + ") { r -= name.length(); }"
+                    + " return r; }", ct));
+        }
+        byte[] bytes = ct.toBytecode();
+        ct.detach();
+        return bytes;
+    }
+
+    /**
+     * 加密 jar
+     *
+     * @param jar      jar 文件
+     * @param password 密码，无密码模式为 #
+     * @param code     机器码，可为 null
+     * @param pack     是否合并加密文件
+     * @param compress 是否加密前压缩
+     * @param cipher   加密算法ID
+     * @return 加密后的 jar
+     * @throws Exception 加密异常
+     */
+    public static File encrypt(File jar, char[] password, char[] code, boolean pack, boolean compress,
+                               String cipher) throws Exception {
+        return encrypt(jar, password, code, pack, compress, cipher, false);
+    }
+
+    /**
+     * 加密 jar
+     *
+     * @param jar      jar 文件
+     * @param password 密码，无密码模式为 #
+     * @param code     机器码，可为 null
+     * @param pack     是否合并加密文件
+     * @param compress 是否加密前压缩
+     * @param cipher   加密算法ID
+     * @param compact  是否精简清空方法体后的类
+     * @return 加密后的 jar
+     * @throws Exception 加密异常
+     */
+    public static File encrypt(File jar, char[] password, char[] code, boolean pack, boolean compress,
+                               String cipher, boolean compact) throws Exception {
+        JarEncryptor encryptor = new JarEncryptor(jar.getAbsolutePath(), password);
+        encryptor.setCode(code);
+        encryptor.setPackages(Collections.singletonList(PACKAGE));
+        encryptor.setIncludeJars(new ArrayList<>(Collections.singletonList("-")));
+        encryptor.setExcludeClass(new ArrayList<>());
+        encryptor.setClassPath(new ArrayList<>());
+        encryptor.setPack(pack);
+        encryptor.setCompress(compress);
+        encryptor.setCipher(cipher);
+        encryptor.setCompact(compact);
+        return new File(encryptor.doEncryptJar());
+    }
+
+    /**
+     * 生成的类名
+     *
+     * @return 类名，{@code com/demo/Test} 格式
+     */
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    /**
+     * 创建临时工作目录
+     *
+     * @return 目录
+     * @throws IOException IO异常
+     */
+    public static File tempDir() throws IOException {
+        return Files.createTempDirectory("classfinal-bench").toFile();
+    }
+}
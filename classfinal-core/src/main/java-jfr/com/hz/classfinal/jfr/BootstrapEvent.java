@@ -0,0 +1,40 @@
+package com.hz.classfinal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * agent 启动 JFR 事件，覆盖 premain 读取密码、校验、加载索引的全过程
+ *
+ * @author roseboy
+ */
+@Name("com.hz.classfinal.Bootstrap")
+@Label("Agent Bootstrap")
+@Category("ClassFinal")
+@Description("CoreAgent.premain 启动过程")
+@StackTrace(false)
+class BootstrapEvent extends jdk.jfr.Event {
+
+    @Label("Root")
+    String root;
+
+    @Label("Encrypted Classes")
+    @Description("已加密类的数量，没有索引时为 -1")
+    int encryptedClasses;
+
+    @Label("Machine Code")
+    @Description("是否绑定了机器码")
+    boolean machineCode;
+
+    @Label("Elapsed")
+    @Description("premain 耗时，premain 早于记录开始时 duration 为0，以此为准")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    //开始时间，不记录
+    transient long startNanos;
+}
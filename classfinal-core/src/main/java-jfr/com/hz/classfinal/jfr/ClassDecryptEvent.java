@@ -0,0 +1,35 @@
+package com.hz.classfinal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 类解密 JFR 事件
+ *
+ * @author roseboy
+ */
+@Name("com.hz.classfinal.ClassDecrypt")
+@Label("Class Decrypt")
+@Category("ClassFinal")
+@Description("解密一个加密的类")
+@StackTrace(false)
+class ClassDecryptEvent extends jdk.jfr.Event {
+
+    @Label("Class Name")
+    String className;
+
+    @Label("Root")
+    String root;
+
+    @Label("Bytes")
+    @DataAmount
+    int bytes;
+
+    @Label("Machine Code")
+    @Description("是否进行了机器码解密")
+    boolean machineCode;
+}
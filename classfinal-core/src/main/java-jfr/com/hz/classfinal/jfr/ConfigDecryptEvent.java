@@ -0,0 +1,35 @@
+package com.hz.classfinal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 配置文件解密 JFR 事件
+ *
+ * @author roseboy
+ */
+@Name("com.hz.classfinal.ConfigDecrypt")
+@Label("Config Decrypt")
+@Category("ClassFinal")
+@Description("解密一个加密的配置文件")
+@StackTrace(false)
+class ConfigDecryptEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Root")
+    String root;
+
+    @Label("Bytes")
+    @Description("边读边解密时为 -1")
+    @DataAmount
+    long bytes;
+
+    @Label("Cached")
+    boolean cached;
+}
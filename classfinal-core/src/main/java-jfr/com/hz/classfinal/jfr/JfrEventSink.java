@@ -0,0 +1,106 @@
+package com.hz.classfinal.jfr;
+
+import com.hz.classfinal.DecryptEventSink;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * JFR 事件输出
+ * <p>
+ * 事件未开启时 begin 返回 null，不创建事件对象。
+ * premain 在 {@code -XX:StartFlightRecording} 开始记录之前执行，启动事件先保存，之后第一次提交类解密事件时再提交。
+ *
+ * @author roseboy
+ */
+public class JfrEventSink implements DecryptEventSink {
+
+    //等待提交的启动事件
+    private volatile BootstrapEvent pendingBootstrap;
+
+    public JfrEventSink() {
+        if (!FlightRecorder.isAvailable()) {
+            throw new IllegalStateException("JFR is not available");
+        }
+    }
+
+    @Override
+    public Object beginClassDecrypt() {
+        return begin(new ClassDecryptEvent());
+    }
+
+    @Override
+    public void commitClassDecrypt(Object event, String className, String root, int bytes, boolean machineCode) {
+        ClassDecryptEvent e = (ClassDecryptEvent) event;
+        e.end();
+        commitPendingBootstrap();
+        if (e.shouldCommit()) {
+            e.className = className;
+            e.root = root;
+            e.bytes = bytes;
+            e.machineCode = machineCode;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginConfigDecrypt() {
+        return begin(new ConfigDecryptEvent());
+    }
+
+    @Override
+    public void commitConfigDecrypt(Object event, String path, String root, long bytes, boolean cached) {
+        ConfigDecryptEvent e = (ConfigDecryptEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.path = path;
+            e.root = root;
+            e.bytes = bytes;
+            e.cached = cached;
+            e.commit();
+        }
+    }
+
+    @Override
+    public Object beginBootstrap() {
+        //此时记录可能还没开始，不判断是否开启
+        BootstrapEvent event = new BootstrapEvent();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commitBootstrap(Object event, String root, int encryptedClasses, boolean machineCode) {
+        BootstrapEvent e = (BootstrapEvent) event;
+        e.end();
+        e.elapsed = System.nanoTime() - e.startNanos;
+        e.root = root;
+        e.encryptedClasses = encryptedClasses;
+        e.machineCode = machineCode;
+        if (e.shouldCommit()) {
+            e.commit();
+        } else {
+            pendingBootstrap = e;
+        }
+    }
+
+    /**
+     * 提交等待中的启动事件
+     */
+    private void commitPendingBootstrap() {
+        BootstrapEvent e = pendingBootstrap;
+        if (e != null) {
+            pendingBootstrap = null;
+            if (e.shouldCommit()) {
+                e.commit();
+            }
+        }
+    }
+
+    private static jdk.jfr.Event begin(jdk.jfr.Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+}
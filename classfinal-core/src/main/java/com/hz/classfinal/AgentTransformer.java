@@ -1,12 +1,20 @@
 package com.hz.classfinal;
 
 import com.hz.classfinal.util.ConsoleLog;
+import com.hz.classfinal.util.IdentityCache;
 import com.hz.classfinal.util.JarUtils;
 import com.hz.classfinal.util.StrUtils;
 
+import java.io.File;
 import java.lang.instrument.ClassFileTransformer;
+import java.net.URL;
+import java.security.CodeSource;
 import java.security.ProtectionDomain;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -14,7 +22,26 @@ import java.util.Objects;
  */
 public class AgentTransformer implements ClassFileTransformer {
 
+    //不是加密项目的标记
+    private static final String NOT_OURS = "";
+    //缓存的 CodeSource 数量上限
+    private static final int ROOT_CACHE_SIZE = 256;
+    //没有加密类索引的标记
+    private static final Set<String> NO_INDEX = new HashSet<>(0);
+
     private final char[] password;
+    /**
+     * classPath 根路径 -> 已加密的类名，没有索引的为 {@link #NO_INDEX}，所有类都需要查找
+     */
+    private final Map<String, Set<String>> classIndexes = new ConcurrentHashMap<>();
+    /**
+     * 提前解密，可为 null
+     */
+    private final ClassPreloader preloader;
+    /**
+     * CodeSource -> classPath 根路径，不是加密项目的为 {@link #NOT_OURS}
+     */
+    private final IdentityCache<CodeSource, String> rootPaths = new IdentityCache<>(ROOT_CACHE_SIZE);
 
     /**
      * 构造方法
@@ -22,7 +49,34 @@ public class AgentTransformer implements ClassFileTransformer {
      * @param password 解密的密码
      */
     public AgentTransformer(char[] password) {
+        this(password, null, null);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param password       解密的密码
+     * @param rootPath       已读取索引的 classPath 根路径
+     * @param encryptClasses rootPath 的已加密类名索引，可为 null
+     */
+    public AgentTransformer(char[] password, String rootPath, Set<String> encryptClasses) {
+        this(password, rootPath, encryptClasses, null);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param password       解密的密码
+     * @param rootPath       已读取索引的 classPath 根路径，其他根路径的索引在第一次加载类时读取
+     * @param encryptClasses rootPath 的已加密类名索引，可为 null
+     * @param preloader      提前解密，可为 null
+     */
+    public AgentTransformer(char[] password, String rootPath, Set<String> encryptClasses, ClassPreloader preloader) {
         this.password = Objects.requireNonNull(password);
+        this.preloader = preloader;
+        if (rootPath != null) {
+            classIndexes.put(new File(rootPath).getAbsolutePath(), encryptClasses == null ? NO_INDEX : encryptClasses);
+        }
     }
 
     @Override
@@ -32,29 +86,111 @@ public class AgentTransformer implements ClassFileTransformer {
         if (className == null || domain == null || loader == null) {
             return classBuffer;
         }
-        //eg  D:/project/test/target/classes/com/demo
-        //eg  nested:D:/project/test/demo.jar!/com/demo
-        String locationPath = domain.getCodeSource().getLocation().getPath();
-
-        locationPath = JarUtils.getRootPath(locationPath);
-        if (StrUtils.isEmpty(locationPath)) {
-            return classBuffer;
+        CodeSource codeSource = domain.getCodeSource();
+        if (codeSource == null) {
+            return passThrough(classBuffer);
+        }
+        String locationPath = rootPaths.get(codeSource);
+        if (locationPath == null) {
+            locationPath = resolveRootPath(codeSource);
+            rootPaths.put(codeSource, locationPath);
         }
-        className = className.replace("/", ".").replace("\\", ".");
+        if (locationPath == NOT_OURS) {
+            return passThrough(classBuffer);
+        }
+        //不在该根路径索引中的类没有加密，直接跳过；没有索引的按原来的方式查找密文
+        Set<String> encryptClasses = classIndexes.computeIfAbsent(locationPath, AgentTransformer::loadClassIndex);
+        if (encryptClasses != NO_INDEX && !encryptClasses.contains(className)) {
+            return passThrough(classBuffer);
+        }
+        className = className.replace('/', '.').replace('\\', '.');
 
+        DecryptMetrics metrics = DecryptMetrics.getInstance();
+        DecryptReport report = DecryptReport.getInstance();
+        boolean timed = metrics.isEnabled() || report.isEnabled();
+        long t1 = timed ? System.nanoTime() : 0;
         try {
-            byte[] decryptBytes = JarDecryptor.getInstance().doDecrypt(locationPath, className, this.password);
+            //优先使用提前解密好的
+            byte[] decryptBytes = preloader == null ? null : preloader.take(locationPath, className);
+            if (decryptBytes == null) {
+                decryptBytes = JarDecryptor.getInstance().doDecrypt(locationPath, className, this.password);
+            }
             if (decryptBytes != null
                     && decryptBytes[0] == -54
                     && decryptBytes[1] == -2
                     && decryptBytes[2] == -70
                     && decryptBytes[3] == -66) {
+                if (preloader != null) {
+                    preloader.record(className, decryptBytes);
+                }
+                if (timed) {
+                    long elapsed = System.nanoTime() - t1;
+                    metrics.classDecrypted(decryptBytes.length, elapsed);
+                    report.record(className, elapsed);
+                }
                 return decryptBytes;
             }
         } catch (Exception e) {
             ConsoleLog.debug(e.getMessage());
         }
+        return passThrough(classBuffer);
+
+    }
+
+    /**
+     * 未加密的类原样返回
+     *
+     * @param classBuffer 类的字节
+     * @return 类的字节
+     */
+    private static byte[] passThrough(byte[] classBuffer) {
+        DecryptMetrics.getInstance().classPassedThrough();
         return classBuffer;
+    }
+
+    /**
+     * 读取 classPath 根路径下的已加密类名索引
+     *
+     * @param rootPath 根路径
+     * @return 类名集合，没有索引或读取失败返回 {@link #NO_INDEX}
+     */
+    private static Set<String> loadClassIndex(String rootPath) {
+        try {
+            Set<String> classNames = JarDecryptor.readClassIndex(new File(rootPath));
+            return classNames == null ? NO_INDEX : classNames;
+        } catch (Exception e) {
+            ConsoleLog.debug(e.getMessage());
+            return NO_INDEX;
+        }
+    }
 
+    /**
+     * 解析 CodeSource 对应的 classPath 根路径，同一个 CodeSource 只解析一次
+     *
+     * @param codeSource CodeSource
+     * @return 根路径的绝对路径，不是加密项目返回 {@link #NOT_OURS}
+     */
+    private static String resolveRootPath(CodeSource codeSource) {
+        URL location = codeSource.getLocation();
+        if (location == null) {
+            return NOT_OURS;
+        }
+        //eg  D:/project/test/target/classes/com/demo
+        //eg  nested:D:/project/test/demo.jar!/com/demo
+        String rootPath = JarUtils.getRootPath(location.getPath());
+        if (StrUtils.isEmpty(rootPath)) {
+            return NOT_OURS;
+        }
+        File root = new File(rootPath);
+        try {
+            //没有密码hash的不是加密后的项目
+            if (JarDecryptor.readEncryptedFile(root, Constants.CONFIG_PASSHASH) == null) {
+                return NOT_OURS;
+            }
+        } catch (Exception e) {
+            ConsoleLog.debug(e.getMessage());
+            return NOT_OURS;
+        }
+        return root.getAbsolutePath();
     }
 }
@@ -0,0 +1,344 @@
+package com.hz.classfinal;
+
+import com.hz.classfinal.util.ConsoleLog;
+import com.hz.classfinal.util.IoUtils;
+import com.hz.classfinal.util.StrUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 提前解密 class
+ * <p>
+ * 训练模式下记录加密类的加载顺序，退出时保存到 jar 同级目录的 {@code xxx-classload.txt}；
+ * 之后启动时后台线程按记录的顺序提前解密，类加载时直接取出解密好的字节，没取到再同步解密；
+ * 记录中最后一个类加载后提前解密结束，释放没有被加载的类。
+ * 也可以在启动时用所有 CPU 在后台一次性解密全部加密类，不阻塞 premain，超出内存预算时放弃，改回按需解密。
+ * 绑定机器的项目还可以使用本机的解密缓存 {@link WarmCache}，类加载时先从缓存中取。
+ *
+ * @author roseboy
+ */
+public class ClassPreloader {
+
+    //已被类加载取走的标记
+    private static final Object TAKEN = new Object();
+
+    //classPath 根路径
+    private final String rootPath;
+    //解密的密码
+    private final char[] password;
+    //类名 -> 解密后的字节或已取走标记
+    private final Map<String, Object> classes = new ConcurrentHashMap<>();
+    //正在提前解密或已解密全部类，为 false 时类加载不查找 classes
+    private volatile boolean active;
+    //记录文件中最后加载的类，被加载后提前解密结束
+    private volatile String lastClass;
+    //训练模式记录的加载顺序，为 null 时不记录
+    private volatile Queue<String> loadOrder;
+    //本机的解密缓存，可为 null
+    private volatile WarmCache warmCache;
+
+    /**
+     * 构造方法
+     *
+     * @param rootPath classPath 根路径
+     * @param password 解密的密码
+     */
+    public ClassPreloader(String rootPath, char[] password) {
+        this.rootPath = new File(rootPath).getAbsolutePath();
+        this.password = password;
+    }
+
+    /**
+     * 加载顺序记录文件，只支持 jar/war 包
+     *
+     * @param rootPath classPath 根路径
+     * @return 记录文件，不支持时返回 null
+     */
+    public static File profileFile(String rootPath) {
+        if (!rootPath.endsWith(Constants.JAR_EXT) && !rootPath.endsWith(Constants.WAR_EXT)) {
+            return null;
+        }
+        File jarFile = new File(rootPath);
+        String jarName = jarFile.getName();
+        return new File(jarFile.getParentFile(), jarName.substring(0, jarName.length() - 4) + "-classload.txt");
+    }
+
+    /**
+     * 训练模式，记录加密类的加载顺序，JVM 退出时写入记录文件
+     *
+     * @param profile 记录文件
+     */
+    public void startTraining(File profile) {
+        if (profile == null) {
+            return;
+        }
+        Queue<String> order = new ConcurrentLinkedQueue<>();
+        this.loadOrder = order;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                IoUtils.writeUtf8(profile, String.join("\n", new LinkedHashSet<>(order)));
+            } catch (IOException e) {
+                ConsoleLog.error("保存类加载顺序失败: %s", e.getMessage());
+            }
+        }, "classfinal-profile"));
+        ConsoleLog.debug("记录类加载顺序: %s", profile);
+    }
+
+    /**
+     * 使用解密缓存，类加载时先从缓存中取，缓存在记录模式时保存加载的类
+     *
+     * @param warmCache 解密缓存
+     */
+    public void setWarmCache(WarmCache warmCache) {
+        this.warmCache = warmCache;
+    }
+
+    /**
+     * 按记录文件的顺序在后台线程提前解密
+     *
+     * @param profile 记录文件
+     * @throws IOException 读取记录文件异常
+     */
+    public void startPrefetch(File profile) throws IOException {
+        if (!IoUtils.exists(profile)) {
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : IoUtils.readUtf8(profile).split("\n")) {
+            if (StrUtils.isNotEmpty(name.trim())) {
+                names.add(name.trim());
+            }
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        lastClass = names.get(names.size() - 1);
+        active = true;
+        Thread thread = new Thread(() -> prefetch(names), "classfinal-prefetch");
+        thread.setDaemon(true);
+        thread.start();
+        ConsoleLog.debug("提前解密: %d 个类", names.size());
+    }
+
+    /**
+     * 在后台线程解密全部加密类，不阻塞启动；超出内存预算时改为按记录文件的顺序提前解密。
+     * 解密期间加载的类没取到时同步解密，已被加载的类解密后不再保存
+     *
+     * @param classNames 已加密的类名，{@code com/demo/Test} 格式
+     * @param budget     内存预算(字节)
+     * @param profile    超出预算时使用的记录文件，可为 null
+     */
+    public void startPreloadAll(Set<String> classNames, long budget, File profile) {
+        //线程启动前加载的类也要标记为已取走
+        active = true;
+        Thread thread = new Thread(() -> {
+            try {
+                if (!preloadAll(classNames, budget)) {
+                    startPrefetch(profile);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                ConsoleLog.debug("提前解密失败: %s", e.getMessage());
+            }
+        }, "classfinal-preload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 用所有 CPU 一次性解密全部加密类，解密完成后返回
+     *
+     * @param classNames 已加密的类名，{@code com/demo/Test} 格式
+     * @param budget     内存预算(字节)，解密后的总大小超出时放弃
+     * @return 全部解密成功返回 true，超出预算返回 false
+     */
+    public boolean preloadAll(Set<String> classNames, long budget) throws InterruptedException {
+        long t1 = System.currentTimeMillis();
+        active = true;
+        AtomicLong used = new AtomicLong();
+        AtomicBoolean exceeded = new AtomicBoolean(false);
+        JarDecryptor decryptor = JarDecryptor.getInstance();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "classfinal-preload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(classNames.size());
+            for (String className : classNames) {
+                String name = className.replace('/', '.');
+                futures.add(executor.submit(() -> {
+                    if (exceeded.get()) {
+                        return;
+                    }
+                    try {
+                        byte[] bytes = decryptor.doDecrypt(rootPath, name, password);
+                        if (bytes == null) {
+                            return;
+                        }
+                        if (used.addAndGet(bytes.length) > budget) {
+                            exceeded.set(true);
+                            return;
+                        }
+                        offer(name, bytes);
+                    } catch (Exception e) {
+                        ConsoleLog.debug("提前解密失败: %s %s", name, e.getMessage());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ignored) {
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (exceeded.get()) {
+            active = false;
+            classes.clear();
+            ConsoleLog.log("解密全部类超出内存预算 %d 字节，改为按需解密", budget);
+            return false;
+        }
+        ConsoleLog.debug("解密全部类: %d 个, %d 字节 (%d ms)",
+                classNames.size(), used.get(), System.currentTimeMillis() - t1);
+        return true;
+    }
+
+    /**
+     * 解析内存大小，支持 k、m、g 后缀，如 256m
+     *
+     * @param size 大小
+     * @return 字节数
+     * @throws NumberFormatException 格式错误
+     */
+    static long parseSize(String size) {
+        String str = size.trim().toLowerCase();
+        if (str.isEmpty()) {
+            throw new NumberFormatException("空的大小");
+        }
+        long unit = 1;
+        char last = str.charAt(str.length() - 1);
+        if (last == 'k') {
+            unit = 1024L;
+        } else if (last == 'm') {
+            unit = 1024L * 1024;
+        } else if (last == 'g') {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit > 1) {
+            str = str.substring(0, str.length() - 1);
+        }
+        return Long.parseLong(str.trim()) * unit;
+    }
+
+    /**
+     * 记录一个加密类被加载
+     *
+     * @param className 类名
+     * @param bytes     解密后的字节
+     */
+    public void record(String className, byte[] bytes) {
+        Queue<String> order = loadOrder;
+        if (order != null) {
+            order.add(className);
+        }
+        WarmCache cache = warmCache;
+        if (cache != null) {
+            cache.record(className, bytes);
+        }
+    }
+
+    /**
+     * 取出提前解密好的字节，取出后不再保留，没有提前解密时从解密缓存中取。
+     * 记录文件中最后一个类被取出时提前解密结束，清空没有被加载的类
+     *
+     * @param rootPath  classPath 根路径
+     * @param className 类名
+     * @return 解密后的字节，没有提前解密返回 null
+     */
+    public byte[] take(String rootPath, String className) {
+        WarmCache cache = warmCache;
+        //没有提前解密也没有解密缓存
+        if (!active && cache == null) {
+            return null;
+        }
+        boolean ours = this.rootPath.equals(rootPath) || this.rootPath.equals(new File(rootPath).getAbsolutePath());
+        Object bytes = null;
+        if (active) {
+            if (ours) {
+                bytes = classes.put(className, TAKEN);
+            }
+            //记录文件中也有其他根路径的类，不管从哪里加载都算结束
+            if (className.equals(lastClass)) {
+                finishPrefetch();
+            }
+        }
+        if (bytes instanceof byte[]) {
+            return (byte[]) bytes;
+        }
+        return ours && cache != null ? cache.read(className) : null;
+    }
+
+    /**
+     * 保存提前解密的字节，已经被类加载取走的不再保存
+     *
+     * @param className 类名
+     * @param bytes     解密后的字节
+     */
+    void offer(String className, byte[] bytes) {
+        classes.putIfAbsent(className, bytes);
+        //提前解密已经结束，不再保存
+        if (!active) {
+            classes.remove(className, bytes);
+        }
+    }
+
+    /**
+     * 提前解密结束，释放没有被加载的类和已取走标记
+     */
+    private void finishPrefetch() {
+        active = false;
+        classes.clear();
+        ConsoleLog.debug("提前解密结束");
+    }
+
+    private void prefetch(List<String> names) {
+        JarDecryptor decryptor = JarDecryptor.getInstance();
+        for (String name : names) {
+            if (!active) {
+                return;
+            }
+            if (classes.containsKey(name)) {
+                continue;
+            }
+            try {
+                byte[] bytes = decryptor.doDecrypt(rootPath, name, password);
+                if (bytes != null) {
+                    offer(name, bytes);
+                }
+            } catch (Exception e) {
+                ConsoleLog.debug("提前解密失败: %s %s", name, e.getMessage());
+            }
+        }
+    }
+}
@@ -41,13 +41,28 @@ public class Constants {
     public static final String CONFIG_CODE = "org.springframework.config.Code";
     //加密密码的hash
     public static final String CONFIG_PASSHASH = "org.springframework.config.PassHash";
+    //已加密类名索引
+    public static final String CONFIG_INDEX = "org.springframework.config.Index";
+    //加密文件合并包
+    public static final String CONFIG_PACK = "org.springframework.config.Pack";
+    //加密算法ID，旧版本加密的 jar 没有时为 ENCRYPT_TYPE
+    public static final String CONFIG_TYPE = "org.springframework.config.Type";
+    //信封加密时公钥包装的内容密钥
+    public static final String CONFIG_KEY = "org.springframework.config.Key";
+    //压缩字典
+    public static final String CONFIG_DICT = "org.springframework.config.Dict";
 
     //本项目需要打包的代码
     public static final String[] CLASSFINAL_FILES = {
-            "CoreAgent", "InputForm",
+            "CoreAgent", "InputForm", "ClassPreloader",
             "JarDecryptor", "AgentTransformer", "Constants", "CmdLineOption",
             "EncryptType", "EncryptUtils",
-            "IoUtils", "JarUtils", "ConsoleLog", "StrUtils", "SysUtils"
+            "IoUtils", "JarUtils", "ConsoleLog", "StrUtils", "SysUtils", "ZipFileCache",
+            "ClassPack", "IdentityCache", "XorInputStream", "DictCompressor", "AesGcm",
+            "CipherProvider", "EntryCipher", "CipherRegistry",
+            "ResourceCache", "DecryptMetrics", "DecryptMetricsMBean",
+            "DecryptEvents", "DecryptEventSink", "JfrEventSink", "ClassDecryptEvent", "ConfigDecryptEvent",
+            "BootstrapEvent", "DecryptReport", "WarmCache"
     };
 
 
@@ -7,6 +7,7 @@ import java.io.Console;
 import java.io.File;
 import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.util.Set;
 
 
 /**
@@ -22,18 +23,50 @@ public class CoreAgent {
      * @param inst inst
      */
     public static void premain(String args, Instrumentation inst) throws IOException {
+        long premainStart = System.currentTimeMillis();
+        Object event = DecryptEvents.beginBootstrap();
         CmdLineOption options = new CmdLineOption();
         options.addOption("pwd", true, "密码");
         options.addOption("pwdname", true, "环境变量密码参数名");
         options.addOption("nopwd", false, "无密码启动");
         options.addOption("debug", false, "调试模式");
         options.addOption("del", true, "读取密码后删除密码");
+        options.addOption("zipidle", true, "jar句柄空闲关闭时间(秒)");
+        options.addOption("train", false, "记录类加载顺序，下次启动时提前解密");
+        options.addOption("eager", true, "启动时解密全部类的内存预算，如256m");
+        options.addOption("cfgcache", true, "配置文件缓存上限，如8m，0为不缓存");
+        options.addOption("cfgcachettl", true, "配置文件缓存在启动多少秒后清空");
+        options.addOption("jmx", false, "注册解密统计MBean");
+        options.addOption("report", true, "退出时写入解密报告的文件");
+        options.addOption("warmcache", false, "绑定机器的项目使用本机的解密缓存");
+        options.addOption("prikey", true, "信封加密的私钥文件");
 
         if (args != null) {
             options.parse(args.split(" "));
             Constants.DEBUG = options.hasOption("debug");
         }
 
+        //解密统计
+        if (options.hasOption("jmx")) {
+            DecryptMetrics.getInstance().register();
+        }
+
+        long zipIdle = parseNumber(options, "zipidle", false);
+        if (zipIdle >= 0) {
+            ZipFileCache.setIdleMillis(zipIdle * 1000);
+        }
+
+        //配置文件缓存
+        ResourceCache configCache = JarDecryptor.getInstance().getConfigCache();
+        long cfgCache = parseNumber(options, "cfgcache", true);
+        if (cfgCache >= 0) {
+            configCache.setMaxBytes(cfgCache);
+        }
+        long cfgCacheTtl = parseNumber(options, "cfgcachettl", false);
+        if (cfgCacheTtl >= 0) {
+            configCache.expireAfter(cfgCacheTtl * 1000);
+        }
+
         char[] password;
 
         //读取jar隐藏的密码，无密码启动模式(jar)
@@ -45,6 +78,19 @@ public class CoreAgent {
         File jarFile = new File(rootPath);
         password = JarDecryptor.readPassFromJar(jarFile);
 
+        //启动解密报告
+        DecryptReport report = DecryptReport.getInstance();
+        String reportFile = options.getOptionValue("report");
+        if (StrUtils.isNotEmpty(reportFile)) {
+            report.start(new File(reportFile), rootPath, premainStart);
+        }
+
+        //绑定了机器，在后台提前采集机器信息
+        boolean machineCode = JarDecryptor.readEncryptedFile(jarFile, Constants.CONFIG_CODE) != null;
+        if (machineCode) {
+            SysUtils.prefetchMarchinCode();
+        }
+
 
         //参数标识 无密码启动
         if (options.hasOption("nopwd")) {
@@ -113,10 +159,87 @@ public class CoreAgent {
                 System.exit(0);
             }
         }
+        //信封加密的项目读取私钥
+        String priKeyFile = options.getOptionValue("prikey");
+        if (StrUtils.isNotEmpty(priKeyFile)) {
+            JarDecryptor.getInstance().setPrivateKey(IoUtils.readUtf8(new File(priKeyFile)).trim().toCharArray());
+        } else if (JarDecryptor.readEncryptedFile(jarFile, Constants.CONFIG_KEY) != null) {
+            ConsoleLog.log("\nERROR: Startup failed, missing private key (-prikey).\n");
+            System.exit(0);
+        }
+
+        //提前派生解密密钥，信封加密时只在这里做一次 RSA 解密
+        try {
+            JarDecryptor.getInstance().prepare(rootPath, password);
+        } catch (Exception e) {
+            ConsoleLog.log("\nERROR: Startup failed, %s\n", e.getMessage());
+            System.exit(0);
+        }
+
+        //读取已加密类名索引
+        Set<String> encryptClasses = JarDecryptor.readClassIndex(jarFile);
+        ConsoleLog.debug("加密类索引：%s", encryptClasses == null ? "无" : encryptClasses.size());
+
+        //绑定机器的项目使用本机的解密缓存，命中时不再提前解密
+        ClassPreloader preloader = new ClassPreloader(rootPath, password);
+        boolean preloaded = false;
+        if (options.hasOption("warmcache") && machineCode) {
+            WarmCache warmCache = WarmCache.create(rootPath, password);
+            if (warmCache != null) {
+                preloaded = warmCache.load();
+                if (!preloaded) {
+                    warmCache.startRecording();
+                }
+                preloader.setWarmCache(warmCache);
+            }
+        }
+
+        //后台解密全部类，超出内存预算时改为按记录的顺序提前解密
+        File profile = ClassPreloader.profileFile(rootPath);
+        long eager = parseNumber(options, "eager", true);
+        if (!preloaded && eager >= 0 && encryptClasses != null) {
+            preloader.startPreloadAll(encryptClasses, eager, options.hasOption("train") ? null : profile);
+            preloaded = true;
+        }
+
+        //训练模式记录类加载顺序，否则按记录的顺序提前解密
+        if (options.hasOption("train")) {
+            preloader.startTraining(profile);
+        } else if (!preloaded) {
+            preloader.startPrefetch(profile);
+        }
+
         //注入解密转换器
         if (inst != null) {
-            inst.addTransformer(new AgentTransformer(password));
+            inst.addTransformer(new AgentTransformer(password, rootPath, encryptClasses, preloader));
+        }
+        report.premainFinished();
+        DecryptEvents.commitBootstrap(event, rootPath, encryptClasses == null ? -1 : encryptClasses.size(), machineCode);
+    }
+
+    /**
+     * 解析数字参数，格式错误时提示并当作没有设置，不影响启动
+     *
+     * @param options 参数
+     * @param name    参数名
+     * @param size    是否是内存大小，支持 k、m、g 后缀
+     * @return 参数值，没有设置或格式错误返回 -1
+     */
+    private static long parseNumber(CmdLineOption options, String name, boolean size) {
+        String value = options.getOptionValue(name);
+        if (StrUtils.isEmpty(value)) {
+            return -1;
+        }
+        try {
+            long number = size ? ClassPreloader.parseSize(value) : Long.parseLong(value.trim());
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            //格式错误
         }
+        ConsoleLog.log("WARN: 参数 -%s=%s 格式错误，已忽略", name, value);
+        return -1;
     }
 
     /**
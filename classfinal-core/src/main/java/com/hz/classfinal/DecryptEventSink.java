@@ -0,0 +1,63 @@
+package com.hz.classfinal;
+
+/**
+ * 解密事件输出接口，运行环境支持 JFR 时由 {@code com.hz.classfinal.jfr.JfrEventSink} 实现
+ *
+ * @author roseboy
+ * @see DecryptEvents
+ */
+public interface DecryptEventSink {
+
+    /**
+     * 开始一个类解密事件
+     *
+     * @return 事件，未开启记录时返回 null
+     */
+    Object beginClassDecrypt();
+
+    /**
+     * 提交类解密事件
+     *
+     * @param event       {@link #beginClassDecrypt()} 返回的事件
+     * @param className   类名
+     * @param root        classPath 根路径
+     * @param bytes       解密后的字节数
+     * @param machineCode 是否进行了机器码解密
+     */
+    void commitClassDecrypt(Object event, String className, String root, int bytes, boolean machineCode);
+
+    /**
+     * 开始一个配置文件解密事件
+     *
+     * @return 事件，未开启记录时返回 null
+     */
+    Object beginConfigDecrypt();
+
+    /**
+     * 提交配置文件解密事件
+     *
+     * @param event  {@link #beginConfigDecrypt()} 返回的事件
+     * @param path   配置文件路径
+     * @param root   classPath 根路径
+     * @param bytes  解密后的字节数，边读边解密时为 -1
+     * @param cached 是否从缓存读取
+     */
+    void commitConfigDecrypt(Object event, String path, String root, long bytes, boolean cached);
+
+    /**
+     * 开始 agent 启动事件
+     *
+     * @return 事件，未开启记录时返回 null
+     */
+    Object beginBootstrap();
+
+    /**
+     * 提交 agent 启动事件
+     *
+     * @param event            {@link #beginBootstrap()} 返回的事件
+     * @param root             classPath 根路径
+     * @param encryptedClasses 已加密类的数量，没有索引时为 -1
+     * @param machineCode      是否绑定了机器码
+     */
+    void commitBootstrap(Object event, String root, int encryptedClasses, boolean machineCode);
+}
@@ -0,0 +1,104 @@
+package com.hz.classfinal;
+
+/**
+ * 解密事件
+ * <p>
+ * 运行环境有 JFR 且编译时包含了 {@code src/main/java-jfr} 时输出 JFR 事件，
+ * 可以在 {@code -XX:StartFlightRecording} 的记录中看到解密耗时；否则所有方法直接返回。
+ *
+ * @author roseboy
+ */
+public class DecryptEvents {
+
+    //JFR 实现的类名
+    private static final String JFR_SINK = "com.hz.classfinal.jfr.JfrEventSink";
+    //事件输出，不支持 JFR 时为 null
+    private static final DecryptEventSink SINK = loadSink();
+
+    private DecryptEvents() {
+    }
+
+    /**
+     * 开始一个类解密事件
+     *
+     * @return 事件，可为 null
+     */
+    public static Object beginClassDecrypt() {
+        return SINK == null ? null : SINK.beginClassDecrypt();
+    }
+
+    /**
+     * 提交类解密事件
+     *
+     * @param event       事件
+     * @param className   类名
+     * @param root        classPath 根路径
+     * @param bytes       解密后的字节数
+     * @param machineCode 是否进行了机器码解密
+     */
+    public static void commitClassDecrypt(Object event, String className, String root, int bytes, boolean machineCode) {
+        if (event != null) {
+            SINK.commitClassDecrypt(event, className, root, bytes, machineCode);
+        }
+    }
+
+    /**
+     * 开始一个配置文件解密事件
+     *
+     * @return 事件，可为 null
+     */
+    public static Object beginConfigDecrypt() {
+        return SINK == null ? null : SINK.beginConfigDecrypt();
+    }
+
+    /**
+     * 提交配置文件解密事件
+     *
+     * @param event  事件
+     * @param path   配置文件路径
+     * @param root   classPath 根路径
+     * @param bytes  解密后的字节数，边读边解密时为 -1
+     * @param cached 是否从缓存读取
+     */
+    public static void commitConfigDecrypt(Object event, String path, String root, long bytes, boolean cached) {
+        if (event != null) {
+            SINK.commitConfigDecrypt(event, path, root, bytes, cached);
+        }
+    }
+
+    /**
+     * 开始 agent 启动事件
+     *
+     * @return 事件，可为 null
+     */
+    public static Object beginBootstrap() {
+        return SINK == null ? null : SINK.beginBootstrap();
+    }
+
+    /**
+     * 提交 agent 启动事件
+     *
+     * @param event            事件
+     * @param root             classPath 根路径
+     * @param encryptedClasses 已加密类的数量，没有索引时为 -1
+     * @param machineCode      是否绑定了机器码
+     */
+    public static void commitBootstrap(Object event, String root, int encryptedClasses, boolean machineCode) {
+        if (event != null) {
+            SINK.commitBootstrap(event, root, encryptedClasses, machineCode);
+        }
+    }
+
+    /**
+     * 加载 JFR 实现，没有编译 JFR 实现或运行环境没有 JFR 时返回 null
+     *
+     * @return 事件输出
+     */
+    private static DecryptEventSink loadSink() {
+        try {
+            return (DecryptEventSink) Class.forName(JFR_SINK).getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.hz.classfinal;
+
+import com.hz.classfinal.util.ConsoleLog;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 解密统计
+ * <p>
+ * 用 {@link LongAdder} 计数，多线程类加载时没有竞争；启用后注册为 MBean，未启用时各记录方法直接返回。
+ *
+ * @author roseboy
+ */
+public class DecryptMetrics implements DecryptMetricsMBean {
+
+    //MBean 名称
+    public static final String OBJECT_NAME = "com.hz.classfinal:type=DecryptMetrics";
+    //耗时分布的区间数，最后一个区间包含所有更长的耗时
+    static final int HISTOGRAM_BUCKETS = 32;
+    private static final DecryptMetrics INSTANCE = new DecryptMetrics();
+
+    //是否启用
+    private volatile boolean enabled = false;
+    private final LongAdder classesDecrypted = new LongAdder();
+    private final LongAdder classesPassedThrough = new LongAdder();
+    private final LongAdder bytesDecrypted = new LongAdder();
+    private final LongAdder zipLookups = new LongAdder();
+    private final LongAdder configFilesDecrypted = new LongAdder();
+    private final LongAdder decryptNanos = new LongAdder();
+    private final LongAccumulator maxDecryptNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] histogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+    private DecryptMetrics() {
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 单例
+     *
+     * @return 单例
+     */
+    public static DecryptMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 是否启用
+     *
+     * @return 启用返回 true
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 启用统计并注册 MBean
+     */
+    public void register() {
+        enabled = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+            ConsoleLog.debug("注册MBean: %s", OBJECT_NAME);
+        } catch (Exception e) {
+            ConsoleLog.error("注册MBean失败: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * 记录一个类解密完成
+     *
+     * @param bytes 解密后的字节数
+     * @param nanos 耗时(纳秒)
+     */
+    public void classDecrypted(int bytes, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        classesDecrypted.increment();
+        bytesDecrypted.add(bytes);
+        decryptNanos.add(nanos);
+        maxDecryptNanos.accumulate(nanos);
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        histogram[Math.min(bucket, HISTOGRAM_BUCKETS - 1)].increment();
+    }
+
+    /**
+     * 记录一个未加密的类
+     */
+    public void classPassedThrough() {
+        if (enabled) {
+            classesPassedThrough.increment();
+        }
+    }
+
+    /**
+     * 记录一次在 jar 中查找加密文件
+     */
+    public void zipLookup() {
+        if (enabled) {
+            zipLookups.increment();
+        }
+    }
+
+    /**
+     * 记录一个配置文件解密
+     */
+    public void configFileDecrypted() {
+        if (enabled) {
+            configFilesDecrypted.increment();
+        }
+    }
+
+    @Override
+    public long getClassesDecrypted() {
+        return classesDecrypted.sum();
+    }
+
+    @Override
+    public long getClassesPassedThrough() {
+        return classesPassedThrough.sum();
+    }
+
+    @Override
+    public long getBytesDecrypted() {
+        return bytesDecrypted.sum();
+    }
+
+    @Override
+    public long getZipLookups() {
+        return zipLookups.sum();
+    }
+
+    @Override
+    public long getConfigFilesDecrypted() {
+        return configFilesDecrypted.sum();
+    }
+
+    @Override
+    public long getDecryptTimeMicros() {
+        return decryptNanos.sum() / 1000;
+    }
+
+    @Override
+    public long getMaxDecryptTimeMicros() {
+        return maxDecryptNanos.get() / 1000;
+    }
+
+    @Override
+    public long[] getDecryptLatencyHistogram() {
+        long[] counts = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            counts[i] = histogram[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public void reset() {
+        classesDecrypted.reset();
+        classesPassedThrough.reset();
+        bytesDecrypted.reset();
+        zipLookups.reset();
+        configFilesDecrypted.reset();
+        decryptNanos.reset();
+        maxDecryptNanos.reset();
+        for (LongAdder counter : histogram) {
+            counter.reset();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.hz.classfinal;
+
+/**
+ * 解密统计 JMX 接口
+ *
+ * @author roseboy
+ */
+public interface DecryptMetricsMBean {
+
+    /**
+     * @return 解密的类数量
+     */
+    long getClassesDecrypted();
+
+    /**
+     * @return 未加密直接放过的类数量
+     */
+    long getClassesPassedThrough();
+
+    /**
+     * @return 解密后的总字节数
+     */
+    long getBytesDecrypted();
+
+    /**
+     * @return 在 jar 中查找加密文件的次数
+     */
+    long getZipLookups();
+
+    /**
+     * @return 解密的配置文件数量
+     */
+    long getConfigFilesDecrypted();
+
+    /**
+     * @return 类解密累计耗时(微秒)
+     */
+    long getDecryptTimeMicros();
+
+    /**
+     * @return 单个类解密最大耗时(微秒)
+     */
+    long getMaxDecryptTimeMicros();
+
+    /**
+     * 类解密耗时分布，第 i 个元素为耗时在 [2^(i-1), 2^i) 微秒之间的类数量，第 0 个为不足1微秒
+     *
+     * @return 各区间的数量
+     */
+    long[] getDecryptLatencyHistogram();
+
+    /**
+     * 清零所有统计
+     */
+    void reset();
+}
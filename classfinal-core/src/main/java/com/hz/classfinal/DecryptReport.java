@@ -0,0 +1,199 @@
+package com.hz.classfinal;
+
+import com.hz.classfinal.util.ConsoleLog;
+import com.hz.classfinal.util.IoUtils;
+import com.hz.classfinal.util.StrUtils;
+import com.hz.classfinal.util.ZipFileCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * 启动解密报告
+ * <p>
+ * 类加载时把类名和解密耗时写入固定大小的环形缓冲区，写满后覆盖最早的记录，不格式化字符串、不输出日志；
+ * JVM 退出时统计总耗时、p50/p99/max、最慢的类、打开 jar 的次数和 main 类加载前的耗时，写入报告文件。
+ *
+ * @author roseboy
+ */
+public class DecryptReport {
+
+    //环形缓冲区大小，2的幂
+    static final int CAPACITY = 1 << 16;
+    //报告中列出的最慢类数量
+    static final int SLOWEST = 50;
+    private static final DecryptReport INSTANCE = new DecryptReport();
+
+    //是否启用
+    private volatile boolean enabled = false;
+    private final String[] names = new String[CAPACITY];
+    private final long[] nanos = new long[CAPACITY];
+    //已写入的记录数，取模后为下一个写入位置
+    private final AtomicLong count = new AtomicLong();
+    //解密总耗时，包含被覆盖的记录
+    private final AtomicLong totalNanos = new AtomicLong();
+    //premain 开始和结束时间
+    private long premainStart;
+    private long premainEnd;
+    //main 类名
+    private String mainClass;
+    //main 类加载完成的时间
+    private volatile long mainLoaded;
+
+    private DecryptReport() {
+    }
+
+    /**
+     * 单例
+     *
+     * @return 单例
+     */
+    public static DecryptReport getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 是否启用
+     *
+     * @return 启用返回 true
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 启用报告，JVM 退出时写入报告文件
+     *
+     * @param reportFile   报告文件
+     * @param rootPath     classPath 根路径
+     * @param premainStart premain 开始时间
+     */
+    public void start(File reportFile, String rootPath, long premainStart) {
+        this.premainStart = premainStart;
+        this.mainClass = readMainClass(rootPath);
+        this.enabled = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                IoUtils.writeUtf8(reportFile, build());
+            } catch (IOException e) {
+                ConsoleLog.error("保存解密报告失败: %s", e.getMessage());
+            }
+        }, "classfinal-report"));
+        ConsoleLog.debug("解密报告: %s", reportFile);
+    }
+
+    /**
+     * premain 执行完成
+     */
+    public void premainFinished() {
+        this.premainEnd = System.currentTimeMillis();
+    }
+
+    /**
+     * 记录一个类的解密耗时
+     *
+     * @param className 类名
+     * @param elapsed   耗时(纳秒)
+     */
+    public void record(String className, long elapsed) {
+        if (!enabled) {
+            return;
+        }
+        int slot = (int) (count.getAndIncrement() & (CAPACITY - 1));
+        names[slot] = className;
+        nanos[slot] = elapsed;
+        totalNanos.addAndGet(elapsed);
+        if (mainLoaded == 0 && className.equals(mainClass)) {
+            mainLoaded = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 生成报告
+     *
+     * @return 报告内容
+     */
+    String build() {
+        long total = count.get();
+        int size = (int) Math.min(total, CAPACITY);
+        Integer[] order = new Integer[size];
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            sorted[i] = nanos[i];
+        }
+        Arrays.sort(sorted);
+        Arrays.sort(order, (a, b) -> Long.compare(nanos[b], nanos[a]));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("ClassFinal 解密报告 ").append(Constants.VERSION).append(" ").append(new Date()).append("\n\n");
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        sb.append(String.format("premain 耗时:        %d ms%n", premainEnd - premainStart));
+        sb.append(String.format("JVM启动到premain:    %d ms%n", premainStart - jvmStart));
+        if (mainLoaded > 0) {
+            sb.append(String.format("JVM启动到main类加载: %d ms (%s)%n", mainLoaded - jvmStart, mainClass));
+        } else {
+            sb.append(String.format("JVM启动到main类加载: 未知 (%s)%n", mainClass == null ? "无法获取main类" : mainClass + " 未加密"));
+        }
+        sb.append(String.format("解密类数量:          %d%s%n", total,
+                total > size ? " (报告只统计最后 " + size + " 个)" : ""));
+        sb.append(String.format("解密总耗时:          %.3f ms%n", totalNanos.get() / 1e6));
+        if (size > 0) {
+            sb.append(String.format("单个类耗时:          p50 %d us, p99 %d us, max %d us%n",
+                    percentile(sorted, 50) / 1000, percentile(sorted, 99) / 1000, sorted[size - 1] / 1000));
+        }
+        sb.append(String.format("打开jar次数:         %d%n", ZipFileCache.getOpenCount()));
+
+        sb.append("\n最慢的 ").append(Math.min(SLOWEST, size)).append(" 个类:\n");
+        for (int i = 0; i < Math.min(SLOWEST, size); i++) {
+            int slot = order[i];
+            sb.append(String.format("%10d us  %s%n", nanos[slot] / 1000, names[slot]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 百分位数
+     *
+     * @param sorted  已排序的数据
+     * @param percent 百分位
+     * @return 数值
+     */
+    static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * 读取 jar 中的 main 类，SpringBoot 的 jar 取 Start-Class
+     *
+     * @param rootPath classPath 根路径
+     * @return main 类名，无法获取返回 null
+     */
+    private static String readMainClass(String rootPath) {
+        if (!rootPath.endsWith(Constants.JAR_EXT)) {
+            return null;
+        }
+        try (JarFile jarFile = new JarFile(rootPath)) {
+            Manifest manifest = jarFile.getManifest();
+            if (manifest == null) {
+                return null;
+            }
+            Attributes attributes = manifest.getMainAttributes();
+            String mainClass = attributes.getValue("Start-Class");
+            if (StrUtils.isEmpty(mainClass)) {
+                mainClass = attributes.getValue(Attributes.Name.MAIN_CLASS);
+            }
+            return StrUtils.isEmpty(mainClass) ? null : mainClass.trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -5,9 +5,16 @@ import com.hz.classfinal.util.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * java class解密
@@ -16,7 +23,26 @@ import java.util.Arrays;
  */
 public class JarDecryptor {
     private static final JarDecryptor INSTANCE = new JarDecryptor();
-    private final char[] code;
+    //没有绑定机器的标记
+    private static final char[] NO_CODE = new char[0];
+    //没有压缩字典的标记
+    private static final byte[] NO_DICT = new byte[0];
+    //classPath 根路径 -> 匹配的机器码
+    private final Map<String, char[]> codes = new ConcurrentHashMap<>();
+    //classPath 根路径 -> 压缩字典
+    private final Map<String, byte[]> dictionaries = new ConcurrentHashMap<>();
+    //classPath 根路径 -> 加密算法ID
+    private final Map<String, String> cipherIds = new ConcurrentHashMap<>();
+    //classPath 根路径 -> 解密器
+    private final Map<String, EntryCipher> ciphers = new ConcurrentHashMap<>();
+    //classPath 根路径 -> 解密用的密钥
+    private final Map<String, char[]> contentKeys = new ConcurrentHashMap<>();
+    //信封加密的私钥，base64编码
+    private volatile char[] privateKey;
+    //解密后的配置文件缓存
+    private final ResourceCache configCache = new ResourceCache();
+    //配置文件所在的 classPath 根路径，只解析一次
+    private volatile String configRootPath;
 
     /**
      * 加密后文件存放位置
@@ -33,7 +59,24 @@ public class JarDecryptor {
     }
 
     JarDecryptor() {
-        this.code = SysUtils.makeMarchinCode();
+    }
+
+    /**
+     * 设置信封加密的私钥
+     *
+     * @param privateKey base64编码的 RSA 私钥
+     */
+    public void setPrivateKey(char[] privateKey) {
+        this.privateKey = privateKey;
+    }
+
+    /**
+     * 解密后的配置文件缓存
+     *
+     * @return 缓存
+     */
+    public ResourceCache getConfigCache() {
+        return configCache;
     }
 
     /**
@@ -45,37 +88,216 @@ public class JarDecryptor {
      * @return 解密后的字节
      */
     public byte[] doDecrypt(String jarPath, String fileName, char[] password) throws Exception {
-        long t1 = System.currentTimeMillis();
+        Object event = DecryptEvents.beginClassDecrypt();
         File jarFile = new File(jarPath);
         byte[] bytes = readEncryptedFile(jarFile, fileName);
         if (bytes == null) {
             return null;
         }
-        //读取机器码，有机器码，先用机器码解密
-        byte[] codeBytes = readEncryptedFile(jarFile, Constants.CONFIG_CODE);
-        if (codeBytes != null) {
-            if (!Arrays.equals(EncryptUtils.md5(code), StrUtils.toChars(codeBytes))) {
-                ConsoleLog.println("该项目不可在此机器上运行!\n");
-                System.exit(-1);
-            }
+        bytes = decryptBytes(jarFile, fileName, bytes, password);
 
-            //用机器码解密
-            char[] pass = StrUtils.merger(fileName.toCharArray(), code);
-            bytes = EncryptUtils.decryption(bytes, pass, Constants.ENCRYPT_TYPE);
+        //压缩模式，解密后解压
+        byte[] dict = getDictionary(jarFile, password);
+        if (dict != NO_DICT && DictCompressor.isCompressed(bytes)) {
+            bytes = DictCompressor.inflate(bytes, dict);
         }
+        DecryptEvents.commitClassDecrypt(event, fileName, jarPath, bytes.length, getMarchinCode(jarFile) != NO_CODE);
+        return bytes;
 
+    }
+
+    /**
+     * 用 jar 包记录的加密算法解密一个文件的内容
+     *
+     * @param jarFile  jar文件或目录
+     * @param fileName 文件名
+     * @param bytes    加密的内容
+     * @param password 密码
+     * @return 解密后的字节
+     */
+    private byte[] decryptBytes(File jarFile, String fileName, byte[] bytes, char[] password) throws Exception {
+        return getCipher(jarFile, password).decrypt(bytes, fileName);
+    }
+
+    /**
+     * 提前读取 jar 包的加密算法并派生密钥，避免在第一个类加载时计算
+     *
+     * @param rootPath classPath 根路径
+     * @param password 密码
+     */
+    public void prepare(String rootPath, char[] password) throws Exception {
+        getCipher(new File(rootPath), password);
+    }
+
+    /**
+     * 获取 jar 包的加密算法ID，每个 jar 只读取一次
+     *
+     * @param jarFile jar文件或目录
+     * @return 算法ID，没有记录时为 {@link Constants#ENCRYPT_TYPE}
+     * @see Constants#CONFIG_TYPE
+     */
+    private String getCipherId(File jarFile) throws IOException {
+        String key = jarFile.getAbsolutePath();
+        String id = cipherIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        byte[] idBytes = readEncryptedFile(jarFile, Constants.CONFIG_TYPE);
+        id = idBytes == null ? Constants.ENCRYPT_TYPE.name() : new String(idBytes, StandardCharsets.UTF_8).trim();
+        cipherIds.put(key, id);
+        return id;
+    }
+
+    /**
+     * 获取 jar 包的解密器，每个 jar 只派生一次密钥
+     *
+     * @param jarFile  jar文件或目录
+     * @param password 密码
+     * @return 解密器
+     * @see CipherRegistry
+     */
+    private EntryCipher getCipher(File jarFile, char[] password) throws Exception {
+        String key = jarFile.getAbsolutePath();
+        EntryCipher cipher = ciphers.get(key);
+        if (cipher != null) {
+            return cipher;
+        }
+        cipher = CipherRegistry.get(getCipherId(jarFile)).create(getContentKey(jarFile, password), getMarchinCode(jarFile));
+        ciphers.put(key, cipher);
+        return cipher;
+    }
+
+    /**
+     * 获取 jar 包解密用的密钥，每个 jar 只解析一次：无密码启动时读取隐藏的密码，信封加密时用私钥解开内容密钥代替密码
+     *
+     * @param jarFile  jar文件或目录
+     * @param password 密码
+     * @return 密钥
+     * @see Constants#CONFIG_KEY
+     */
+    private char[] getContentKey(File jarFile, char[] password) throws Exception {
+        String key = jarFile.getAbsolutePath();
+        char[] contentKey = contentKeys.get(key);
+        if (contentKey != null) {
+            return contentKey;
+        }
+        contentKey = password;
         //无密码启动,读取隐藏的密码
         if (password.length == 1 && password[0] == '#') {
-            password = readPassFromJar(jarFile);
+            contentKey = readPassFromJar(jarFile);
+        }
+        byte[] wrapped = readEncryptedFile(jarFile, Constants.CONFIG_KEY);
+        if (wrapped != null) {
+            if (privateKey == null) {
+                throw new IllegalStateException("信封加密的项目需要私钥");
+            }
+            contentKey = StrUtils.toChars(EncryptUtils.unwrapKey(wrapped, privateKey));
         }
+        contentKeys.put(key, contentKey);
+        return contentKey;
+    }
 
-        //密码解密
-        char[] pass = StrUtils.merger(password, fileName.toCharArray());
-        bytes = EncryptUtils.decryption(bytes, pass, Constants.ENCRYPT_TYPE);
-        long t2 = System.currentTimeMillis();
-        ConsoleLog.debug("解密: %s (%d ms)", fileName, t2 - t1);
-        return bytes;
+    /**
+     * 获取 jar 包中的压缩字典，每个 jar 只读取一次
+     *
+     * @param jarFile  jar文件或目录
+     * @param password 密码
+     * @return 字典，没有压缩返回 {@link #NO_DICT}
+     * @see Constants#CONFIG_DICT
+     */
+    private byte[] getDictionary(File jarFile, char[] password) throws Exception {
+        String key = jarFile.getAbsolutePath();
+        byte[] dict = dictionaries.get(key);
+        if (dict != null) {
+            return dict;
+        }
+        byte[] bytes = readEncryptedFile(jarFile, Constants.CONFIG_DICT);
+        dict = bytes == null ? NO_DICT : decryptBytes(jarFile, Constants.CONFIG_DICT, bytes, password);
+        dictionaries.put(key, dict);
+        return dict;
+    }
 
+    /**
+     * 根据名称打开一个边读边解密的输入流，MD5 异或加密时不把整个文件读入内存，其他方式解密后返回
+     *
+     * @param jarPath  jar包路径
+     * @param fileName 文件名
+     * @param password 密码
+     * @return 解密的输入流，文件不存在返回 null
+     */
+    public InputStream openDecryptStream(String jarPath, String fileName, char[] password) throws Exception {
+        File jarFile = new File(jarPath);
+        if (!EncryptType.MD5.name().equals(getCipherId(jarFile))) {
+            byte[] bytes = doDecrypt(jarPath, fileName, password);
+            return bytes == null ? null : new ByteArrayInputStream(bytes);
+        }
+        InputStream in = openEncryptedFile(jarFile, fileName);
+        if (in == null) {
+            return null;
+        }
+        try {
+            char[] name = fileName.toCharArray();
+            //两层异或合并成一个密钥，与 getCipher 使用同样的密钥
+            byte[] key = EncryptUtils.xorKey(getContentKey(jarFile, password), name);
+            char[] code = getMarchinCode(jarFile);
+            if (code != NO_CODE) {
+                byte[] codeKey = EncryptUtils.xorKey(name, code);
+                for (int i = 0; i < key.length; i++) {
+                    key[i] ^= codeKey[i];
+                }
+            }
+            //压缩模式，边解密边解压
+            byte[] dict = getDictionary(jarFile, password);
+            InputStream decrypted = new XorInputStream(in, key);
+            return dict == NO_DICT ? decrypted : DictCompressor.inflate(decrypted, dict);
+        } catch (Exception e) {
+            IoUtils.close(in);
+            throw e;
+        }
+    }
+
+    /**
+     * 获取与 jar 包绑定的机器码相匹配的本机机器码，每个 jar 只匹配一次
+     *
+     * @param jarFile jar文件或目录
+     * @return 机器码，没有绑定机器返回空数组
+     */
+    char[] getMarchinCode(File jarFile) throws IOException {
+        String key = jarFile.getAbsolutePath();
+        char[] code = codes.get(key);
+        if (code != null) {
+            return code;
+        }
+        byte[] codeBytes = readEncryptedFile(jarFile, Constants.CONFIG_CODE);
+        if (codeBytes == null) {
+            code = NO_CODE;
+        } else {
+            char[] expected = StrUtils.toChars(codeBytes);
+            char[][] candidates;
+            try {
+                candidates = SysUtils.makeMarchinCodes();
+            } catch (IllegalStateException e) {
+                ConsoleLog.println("无法获取本机机器码: " + e.getMessage() + "\n");
+                System.exit(-1);
+                throw e;
+            }
+            for (int i = 0; i < candidates.length; i++) {
+                if (Arrays.equals(EncryptUtils.md5(candidates[i]), expected)) {
+                    code = candidates[i];
+                    //旧版本的机器码只绑定了网卡
+                    if (i > 0) {
+                        ConsoleLog.println("WARN: 项目使用旧版本的机器码加密，只绑定了网卡，建议重新生成机器码并加密\n");
+                    }
+                    break;
+                }
+            }
+            if (code == null) {
+                ConsoleLog.println("该项目不可在此机器上运行!\n");
+                System.exit(-1);
+            }
+        }
+        codes.put(key, code);
+        return code;
     }
 
     /**
@@ -86,14 +308,48 @@ public class JarDecryptor {
      * @return 文件字节数组
      */
     public static byte[] readEncryptedFile(File workDir, String name) throws IOException {
+        //合并包中查找
+        ClassPack pack = ClassPack.open(workDir);
+        if (pack != null) {
+            byte[] bytes = pack.read(name);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
         String fileName = ENCRYPT_PATH + name;
         if (workDir.isFile()) {
-            return JarUtils.extractFile(workDir, fileName);
+            DecryptMetrics.getInstance().zipLookup();
+            return ZipFileCache.readEntry(workDir, fileName);
         }
         File file = new File(workDir, fileName);
         return file.exists() ? IoUtils.readBytes(file) : null;
     }
 
+    /**
+     * 在 jar文件或目录中打开加密目录下文件的输入流
+     *
+     * @param workDir jar文件或目录
+     * @param name    加密目录下的文件
+     * @return 输入流，文件不存在返回 null
+     */
+    public static InputStream openEncryptedFile(File workDir, String name) throws IOException {
+        //合并包中查找
+        ClassPack pack = ClassPack.open(workDir);
+        if (pack != null) {
+            InputStream in = pack.openStream(name);
+            if (in != null) {
+                return in;
+            }
+        }
+        String fileName = ENCRYPT_PATH + name;
+        if (workDir.isFile()) {
+            DecryptMetrics.getInstance().zipLookup();
+            return ZipFileCache.openEntry(workDir, fileName);
+        }
+        File file = new File(workDir, fileName);
+        return file.exists() ? new FileInputStream(file) : null;
+    }
+
     /**
      * 读取 jar 包中的密码文件
      *
@@ -106,8 +362,32 @@ public class JarDecryptor {
         return passBytes != null ? EncryptUtils.md5(StrUtils.toChars(passBytes)) : null;
     }
 
+    /**
+     * 读取 jar 包中已加密类名的索引，类名为 {@code com/demo/Test} 格式，与类加载时的类名一致
+     *
+     * @param workDir jar路径
+     * @return 类名集合，没有索引返回 null
+     * @see Constants#CONFIG_INDEX
+     */
+    public static Set<String> readClassIndex(File workDir) throws IOException {
+        byte[] indexBytes = readEncryptedFile(workDir, Constants.CONFIG_INDEX);
+        if (indexBytes == null) {
+            return null;
+        }
+        Set<String> classNames = new HashSet<>();
+        for (String name : new String(indexBytes, StandardCharsets.UTF_8).split("\n")) {
+            if (StrUtils.isNotEmpty(name)) {
+                classNames.add(name.replace('.', '/'));
+            }
+        }
+        return classNames;
+    }
+
     /**
      * 解密配置文件
+     * <p>
+     * 加密后的配置文件内容被清空，读到空文件时打开加密目录下的密文边读边解密，不读入整个文件；
+     * 完整读取过的配置文件会被缓存，同一文件再次读取时直接从内存返回
      *
      * @param path 配置文件路径
      * @param in   输入流
@@ -117,18 +397,43 @@ public class JarDecryptor {
         if (path.endsWith(Constants.CLASS_EXT)) {
             return in;
         }
-        String rootPath = JarUtils.getRootPath();
+        String rootPath = configRootPath;
+        if (rootPath == null) {
+            rootPath = JarUtils.getRootPath();
+            configRootPath = rootPath;
+        }
         if (StrUtils.isEmpty(rootPath)) {
             return in;
         }
-        byte[] bytes = IoUtils.readBytes(in);
-        if (bytes.length == 0) {
-            bytes = doDecrypt(rootPath, path, pass);
+        //只读一个字节判断是否为空文件，不为空时原样返回
+        PushbackInputStream pushback = new PushbackInputStream(in, 1);
+        int first = pushback.read();
+        if (first >= 0) {
+            pushback.unread(first);
+            return pushback;
         }
-        if (bytes == null) {
-            return in;
+        Object event = DecryptEvents.beginConfigDecrypt();
+        InputStream cached = configCache.get(path);
+        if (cached != null) {
+            IoUtils.close(in);
+            DecryptEvents.commitConfigDecrypt(event, path, rootPath, cached.available(), true);
+            return cached;
+        }
+        InputStream decrypted;
+        long size = -1;
+        if (EncryptType.MD5.name().equals(getCipherId(new File(rootPath)))) {
+            decrypted = openDecryptStream(rootPath, path, pass);
+        } else {
+            byte[] bytes = doDecrypt(rootPath, path, pass);
+            decrypted = bytes == null ? null : new ByteArrayInputStream(bytes);
+            size = bytes == null ? -1 : bytes.length;
+        }
+        if (decrypted == null) {
+            return pushback;
         }
+        DecryptEvents.commitConfigDecrypt(event, path, rootPath, size, false);
+        DecryptMetrics.getInstance().configFileDecrypted();
         IoUtils.close(in);
-        return new ByteArrayInputStream(bytes);
+        return configCache.cacheOnRead(path, decrypted);
     }
 }
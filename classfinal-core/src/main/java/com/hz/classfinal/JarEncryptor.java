@@ -4,13 +4,31 @@ import javassist.ClassPool;
 import javassist.NotFoundException;
 import com.hz.classfinal.util.*;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 /**
  * java class加密
@@ -18,6 +36,8 @@ import java.util.regex.Pattern;
  * @author roseboy
  */
 public class JarEncryptor {
+    //流式加密各阶段之间的队列长度
+    static final int STREAM_QUEUE_SIZE = 256;
     static final Pattern SYNTHETIC_PATTERN = Pattern.compile("([\\w$]+)(?:\\$\\$Lambda)?\\$\\d.class");
     //加载配置文件是注入解密代码的配置
     static final Map<String, InjectInfo> injectMap = new HashMap<>();
@@ -69,6 +89,38 @@ public class JarEncryptor {
      * 机器码
      */
     private char[] code = null;
+    /**
+     * 是否把加密后的文件合并成一个包
+     */
+    private boolean pack = false;
+    /**
+     * 是否在加密前压缩
+     */
+    private boolean compress = false;
+    /**
+     * 加密算法ID，见 {@link CipherRegistry}；没有设置时为 {@link Constants#ENCRYPT_TYPE}，信封加密时为 AES/GCM
+     */
+    private String cipherId = null;
+    /**
+     * base64编码的 RSA 公钥，设置后使用信封加密
+     */
+    private char[] publicKey = null;
+    /**
+     * 是否流式加密，直接从原包读取，在内存中处理后写入新包，不释放到临时目录
+     */
+    private boolean stream = false;
+    /**
+     * 是否精简清空方法体后的类，只保留用到的常量
+     */
+    private boolean compact = false;
+    /**
+     * 是否生成 Spring 组件索引
+     */
+    private boolean springIndex = false;
+    /**
+     * 并行加密和清空方法体的线程数
+     */
+    private int threads = 1;
 
     //--------------- 内部字段 -------------------
 
@@ -96,6 +148,40 @@ public class JarEncryptor {
      * 加密的文件数量
      */
     private Integer encryptFileCount = null;
+    /**
+     * 已加密的类名，写入索引供启动时快速判断
+     */
+    private final Set<String> encryptClassNames = new TreeSet<>();
+    /**
+     * 合并包模式下加密后的文件，按文件名排序
+     */
+    private final Map<String, byte[]> packEntries = new TreeMap<>();
+    /**
+     * 压缩字典，不压缩时为 null
+     */
+    private byte[] dictionary = null;
+    /**
+     * 加密器，确定密码后创建
+     */
+    private EntryCipher cipher = null;
+    /**
+     * 信封加密的内容密钥
+     */
+    private char[] contentKey = null;
+    /**
+     * 流式加密时 META-INF/.classes 里的文件，最后写入加密后的包；不是流式加密时为 null
+     */
+    private Map<String, byte[]> metaEntries = null;
+    /**
+     * 压缩前后的总字节数
+     */
+    private long rawBytes = 0;
+    private long compressedBytes = 0;
+    /**
+     * 精简前后的总字节数
+     */
+    private long stubRawBytes = 0;
+    private long stubBytes = 0;
     /**
      * 存储解析出来的类名和路径
      */
@@ -119,7 +205,14 @@ public class JarEncryptor {
      * @return 解密后生成的文件的绝对路径
      */
     public String doEncryptJar() throws Exception {
+        //没有指定加密算法时使用默认算法，信封加密默认用 AES/GCM
+        if (cipherId == null) {
+            cipherId = publicKey != null ? EncryptType.AES_GCM.name() : Constants.ENCRYPT_TYPE.name();
+        }
         initParam();
+        if (stream) {
+            return doEncryptStream();
+        }
 
         //[1]释放所有文件
         List<String> allFilePath = JarUtils.uncompressJar(zipPath, tempWork.getAbsolutePath());
@@ -152,21 +245,378 @@ public class JarEncryptor {
         //[3]将本项目的代码添加至jar中
         addClassFinalAgent();
 
+        //[3.1]训练压缩字典
+        trainDictionary(classFiles);
+
         //[4]将正常的class加密，压缩另存
         List<String> encrypts = encryptClass(classFiles);
         this.encryptFileCount = encrypts.size();
 
         //[5]清空class方法体，并保存文件
         clearClassMethod(classFiles);
+        logCompact();
 
         //[6]加密配置文件
         encryptConfigFile();
 
+        //[6.1]写入压缩字典
+        writeDictionary();
+
+        //[6.2]写入已加密类名索引
+        writeClassIndex();
+
+        //[6.3]合并加密文件
+        writeClassPack();
+
+        //[6.4]生成 Spring 组件索引
+        writeSpringIndex(allFilePath);
+
         //[7]打包回去
         return packageJar(libJars);
     }
 
 
+    /**
+     * 流式加密的主要过程，读取、挑选加密、写入之间用有界队列连接，所有文件都在内存中处理
+     * <p>
+     * 读取线程按顺序读出原包中的文件，需要加密的依赖 jar 展开后逐个读出；主线程挑选需要加密的类和配置文件，
+     * 其余文件直接交给写入线程写入新包。读完后清空类的方法体（类从原包中查找，不释放文件），
+     * 最后写入重新打包的依赖 jar、classfinal 的类和 META-INF/.classes。
+     *
+     * @return 加密后生成的文件的绝对路径
+     */
+    private String doEncryptStream() throws Exception {
+        this.metaEntries = new TreeMap<>();
+        File outFile = new File(zipPath.replace("." + extName, "-encrypted." + extName));
+        //classfinal 的类，替换原包中的同名文件
+        Map<String, byte[]> agentEntries = readClassFinalAgent();
+        writeKeyFiles();
+
+        //先打开输出文件，打不开时直接报错，不启动读写线程
+        ZipSink sink = new ZipSink(new BufferedOutputStream(Files.newOutputStream(outFile.toPath())));
+        BlockingQueue<ZipItem> input = new ArrayBlockingQueue<>(STREAM_QUEUE_SIZE);
+        BlockingQueue<ZipItem> output = new ArrayBlockingQueue<>(STREAM_QUEUE_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(2, daemonThreads("classfinal-stream"));
+        boolean success = false;
+        try (ZipFile zip = new ZipFile(zipPath);
+             ZipClassPath zipClassPath = new ZipClassPath(new File(zipPath))) {
+            Future<?> reader = executor.submit(() -> {
+                readEntries(zip, input);
+                return null;
+            });
+            Future<?> writer = executor.submit(() -> {
+                writeEntries(sink, output);
+                return null;
+            });
+
+            //[1]挑选需要加密的类和配置文件，其余文件直接写入
+            List<ZipItem> classes = new ArrayList<>();
+            List<ZipItem> configs = new ArrayList<>();
+            //Spring 组件索引：要索引的类、原有的索引文件
+            List<byte[]> indexClasses = new ArrayList<>();
+            Map<String, byte[]> springIndexes = new TreeMap<>();
+            boolean bootClasses = false;
+            Map<String, ZipSink> libs = new LinkedHashMap<>();
+            String cfgDir = (isJar() ? "BOOT-INF" : "WEB-INF") + "/classes/";
+            boolean hasManifest = false;
+            ZipItem item;
+            while ((item = input.take()) != ZipItem.END) {
+                if (springIndex && isIndexClass(item)) {
+                    indexClasses.add(item.bytes);
+                    bootClasses |= item.lib == null && item.name.startsWith(cfgDir);
+                }
+                //需要加密的依赖 jar 中的文件
+                if (item.lib != null) {
+                    if (item.name == null) {
+                        libs.put(item.lib, new ZipSink(new ByteArrayOutputStream()));
+                        ConsoleLog.debug("释放：%s", item.lib);
+                    } else if (isEncryptClass(item)) {
+                        classes.add(item);
+                    } else {
+                        libs.get(item.lib).write(item.name, item.bytes, item.time);
+                    }
+                    continue;
+                }
+                if (agentEntries.containsKey(item.name)) {
+                    continue;
+                }
+                if (springIndex && item.bytes != null && (SpringIndexer.INDEX_FILE.equals(item.name)
+                        || (cfgDir + SpringIndexer.INDEX_FILE).equals(item.name))) {
+                    springIndexes.put(item.name, item.bytes);
+                    continue;
+                }
+                if ("META-INF/MANIFEST.MF".equals(item.name)) {
+                    hasManifest = true;
+                    item = item.withBytes(addPremainClass(new String(item.bytes, StandardCharsets.UTF_8))
+                            .getBytes(StandardCharsets.UTF_8));
+                } else if (isEncryptClass(item)) {
+                    classes.add(item);
+                    continue;
+                } else if (item.bytes != null && cfgfiles != null && item.name.startsWith(cfgDir)
+                        && item.name.indexOf('/', cfgDir.length()) < 0
+                        && StrUtils.isMatchAny(cfgfiles, item.name.substring(cfgDir.length()), false)) {
+                    //加密后清空
+                    configs.add(item);
+                    item = item.withBytes(new byte[0]);
+                }
+                output.put(item);
+            }
+            reader.get();
+
+            //[2]加密，压缩模式下先训练字典
+            if (compress) {
+                trainSamples(classes.stream().map(c -> c.bytes).collect(Collectors.toList()));
+            }
+            //加密算法可能在原数组上加密(如 MD5 异或)，原文还要用来写入新包，传入副本
+            List<byte[]> encrypted = parallel(classes, c -> sealEntry(resolveEntryClassName(c), c.bytes.clone()));
+            for (int i = 0; i < classes.size(); i++) {
+                String className = resolveEntryClassName(classes.get(i));
+                encryptClassNames.add(className);
+                writeEncrypted(className, encrypted.get(i));
+                ConsoleLog.debug("加密：%s", className);
+            }
+            this.encryptFileCount = classes.size();
+
+            //[3]清空class方法体，按读取的顺序写入新包或依赖 jar
+            List<byte[]> stubs = parallel(classes, classItem -> {
+                String className = resolveEntryClassName(classItem);
+                try {
+                    byte[] bytes = stubClass(classItem.bytes);
+                    ConsoleLog.debug("清除方法体：%s", className);
+                    return bytes;
+                } catch (Exception e) {
+                    ConsoleLog.debug("ERROR:" + e.getMessage());
+                    return classItem.bytes;
+                }
+            });
+            for (int i = 0; i < classes.size(); i++) {
+                ZipItem classItem = classes.get(i);
+                if (classItem.lib != null) {
+                    libs.get(classItem.lib).write(classItem.name, stubs.get(i), classItem.time);
+                } else {
+                    output.put(classItem.withBytes(stubs.get(i)));
+                }
+            }
+            logCompact();
+
+            //[4]加密配置文件，给读取配置文件的类注入解密代码
+            if (cfgfiles != null && cfgfiles.size() > 0) {
+                for (Map.Entry<String, byte[]> entry : injectConfigDecrypt(createClassPool(zipClassPath)).entrySet()) {
+                    encryptClassNames.add(entry.getKey());
+                    encryptEntry(entry.getKey(), entry.getValue());
+                }
+                for (ZipItem config : configs) {
+                    encryptEntry(config.name.substring(cfgDir.length()), config.bytes);
+                }
+            }
+
+            //[5]写入重新打包的依赖 jar、classfinal 的类和 MANIFEST.MF，使用原包的修改时间，相同的输入输出相同
+            long now = new File(zipPath).lastModified();
+            for (Map.Entry<String, ZipSink> lib : libs.entrySet()) {
+                output.put(new ZipItem(null, lib.getKey(), lib.getValue().finish(), now));
+                ConsoleLog.debug("打包: %s", lib.getKey());
+            }
+            for (Map.Entry<String, byte[]> entry : agentEntries.entrySet()) {
+                output.put(new ZipItem(null, entry.getKey(), entry.getValue(), now));
+            }
+            if (!hasManifest) {
+                output.put(new ZipItem(null, "META-INF/MANIFEST.MF",
+                        addPremainClass(null).getBytes(StandardCharsets.UTF_8), now));
+            }
+            if (springIndex) {
+                String indexName = (isWar() || bootClasses ? cfgDir : "") + SpringIndexer.INDEX_FILE;
+                byte[] bytes = buildSpringIndex(createClassPool(zipClassPath), indexClasses,
+                        springIndexes.remove(indexName));
+                if (bytes != null) {
+                    springIndexes.put(indexName, bytes);
+                }
+                for (Map.Entry<String, byte[]> entry : springIndexes.entrySet()) {
+                    output.put(new ZipItem(null, entry.getKey(), entry.getValue(), now));
+                }
+            }
+
+            //[6]写入 META-INF/.classes
+            writePassHash();
+            writeDictionary();
+            writeClassIndex();
+            writeClassPack();
+            String metaDir = "META-INF/" + Constants.FILE_NAME + "/";
+            output.put(new ZipItem(null, metaDir, null, now));
+            for (Map.Entry<String, byte[]> entry : metaEntries.entrySet()) {
+                output.put(new ZipItem(null, metaDir + entry.getKey(), entry.getValue(), now));
+            }
+            output.put(ZipItem.END);
+            writer.get();
+            success = true;
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            if (!success) {
+                IoUtils.close(sink);
+                Files.deleteIfExists(outFile.toPath());
+            }
+        }
+        ConsoleLog.debug("打包: %s", outFile);
+        return outFile.getAbsolutePath();
+    }
+
+    /**
+     * 读取线程：按顺序读出原包中的文件，需要加密的依赖 jar 展开后逐个读出，最后放入结束标记
+     */
+    private void readEntries(ZipFile zip, BlockingQueue<ZipItem> queue) throws Exception {
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                //删除 META-INF下 的 maven
+                if (name.startsWith("META-INF/maven/") || JarUtils.isStyleFile(name)) {
+                    continue;
+                }
+                if (entry.isDirectory()) {
+                    queue.put(new ZipItem(null, name, null, entry.getTime()));
+                    continue;
+                }
+                String simpleName = name.substring(name.lastIndexOf('/') + 1);
+                if (!name.endsWith(Constants.JAR_EXT) || !StrUtils.isMatchAny(includeJars, simpleName, false)) {
+                    queue.put(new ZipItem(null, name, IoUtils.readBytes(zip.getInputStream(entry)), entry.getTime()));
+                    continue;
+                }
+                //需要加密的依赖 jar，先放入开始标记
+                queue.put(new ZipItem(name, null, null, entry.getTime()));
+                try (ZipInputStream zis = new ZipInputStream(zip.getInputStream(entry))) {
+                    ZipEntry nested;
+                    while ((nested = zis.getNextEntry()) != null) {
+                        if (JarUtils.isStyleFile(nested.getName())) {
+                            continue;
+                        }
+                        byte[] bytes = nested.isDirectory() ? null : IoUtils.readRemaining(zis);
+                        queue.put(new ZipItem(name, nested.getName(), bytes, nested.getTime()));
+                    }
+                }
+            }
+        } finally {
+            queue.put(ZipItem.END);
+        }
+    }
+
+    /**
+     * 写入线程：把队列中的文件写入新包，读到结束标记后结束新包；任何写入失败后继续取出直到结束标记，避免阻塞主线程
+     */
+    private void writeEntries(ZipSink sink, BlockingQueue<ZipItem> queue) throws Exception {
+        Exception error = null;
+        ZipItem item;
+        while ((item = queue.take()) != ZipItem.END) {
+            if (error != null) {
+                continue;
+            }
+            try {
+                sink.write(item.name, item.bytes, item.time);
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        sink.close();
+    }
+
+    /**
+     * 是否是需要加密的类
+     */
+    private boolean isEncryptClass(ZipItem item) {
+        if (item.bytes == null || !item.name.endsWith(Constants.CLASS_EXT)) {
+            return false;
+        }
+        String className = resolveEntryClassName(item);
+        return StrUtils.isMatchAny(packages, className, false)
+                && !StrUtils.isMatchAny(excludeClass, className, false);
+    }
+
+    /**
+     * 是否是要写入 Spring 组件索引的类：Spring 有索引时不再扫描，classes 根目录下的类全部索引；
+     * 依赖 jar 中只索引加密包名下的类，包括排除加密的类
+     */
+    private boolean isIndexClass(ZipItem item) {
+        if (item.bytes == null || !item.name.endsWith(Constants.CLASS_EXT)) {
+            return false;
+        }
+        if (item.lib == null) {
+            return !isWar() || item.name.startsWith("WEB-INF/classes/");
+        }
+        return StrUtils.isMatchAny(packages, resolveEntryClassName(item), false);
+    }
+
+    /**
+     * 根据包内的文件名解析出全类名，依赖 jar 中的类从 jar 根目录开始，其他类去掉 -INF/classes 前缀
+     */
+    private static String resolveEntryClassName(ZipItem item) {
+        String name = item.name.substring(0, item.name.length() - Constants.CLASS_EXT.length());
+        if (item.lib == null) {
+            int index = ("/" + name).indexOf("/classes/");
+            if (index >= 0) {
+                name = name.substring(index + "classes/".length());
+            }
+        }
+        return name.replace('/', '.');
+    }
+
+    /**
+     * 清空方法体用的类字节码池，直接从原包和外部依赖中查找类
+     */
+    private ClassPool createClassPool(ZipClassPath zipClassPath) {
+        ClassPool pool = new ClassPool(true);
+        //外部依赖的lib加入classpath
+        for (String path : classPath) {
+            ClassUtils.loadClassPath(pool, new File(path));
+        }
+        pool.insertClassPath(zipClassPath);
+        return pool;
+    }
+
+    /**
+     * 读取需要加入加密包的 classfinal 的文件，与 {@link #addClassFinalAgent()} 相同
+     *
+     * @return 包内文件名 -> 内容
+     */
+    private Map<String, byte[]> readClassFinalAgent() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        String path = this.getClass().getProtectionDomain().getCodeSource().getLocation().getPath();
+        File currentFile = new File(path);
+        //jar 包环境
+        if (isJar() && path.endsWith(Constants.JAR_EXT)) {
+            final List<String> includeFiles = Arrays.asList(Constants.CLASSFINAL_FILES);
+            try (ZipFile zip = new ZipFile(currentFile)) {
+                Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+                while (zipEntries.hasMoreElements()) {
+                    ZipEntry entry = zipEntries.nextElement();
+                    String name = entry.getName();
+                    if (!entry.isDirectory() && matchClassFile(name.substring(name.lastIndexOf('/') + 1), includeFiles)) {
+                        entries.put(name, IoUtils.readBytes(zip.getInputStream(entry)));
+                    }
+                }
+            }
+        }
+        //war 包环境
+        else if (isWar() && path.endsWith(Constants.WAR_EXT)) {
+            entries.put("WEB-INF/lib/" + currentFile.getName(), IoUtils.readBytes(currentFile));
+        }
+        //开发环境
+        else if (path.endsWith("/classes/")) {
+            String prefix = isJar() ? "" : "WEB-INF/classes/";
+            for (File file : IoUtils.listAllFile(currentFile)) {
+                if (file.isFile() && StrUtils.containsAny(file.getAbsolutePath(), Constants.CLASSFINAL_FILES)) {
+                    String name = file.getAbsolutePath().substring(currentFile.getAbsolutePath().length() + 1);
+                    entries.put(prefix + name.replace(File.separator, "/"), IoUtils.readBytes(file));
+                }
+            }
+        }
+        return entries;
+    }
+
     private void initParam() {
         if (null == zipPath) {
             throw new RuntimeException("请指定要加密的jar或war");
@@ -260,51 +710,201 @@ public class JarEncryptor {
      */
     private List<String> encryptClass(List<File> classFiles) throws Exception {
         List<String> encryptClasses = new ArrayList<>();
-        //加密后存储的位置 META-INF/.classes/
-        File metaDir = new File(tempWork, "META-INF" + File.separator + Constants.FILE_NAME);
-        IoUtils.mkdir(metaDir);
+        writeKeyFiles();
+
+        Map<File, String> fileNames = new HashMap<>();
+        for (File classFile : classFiles) {
+            String className = classFile.getName();
+            if (className.endsWith(Constants.CLASS_EXT)) {
+                className = resolveClassName(classFile.getAbsolutePath(), true);
+                encryptClassNames.add(className);
+            }
+            fileNames.put(classFile, className);
+        }
+
+        //加密另存，多线程加密后按顺序保存
+        List<byte[]> encrypted = parallel(classFiles, f -> sealEntry(fileNames.get(f), IoUtils.readBytes(f)));
+        for (int i = 0; i < classFiles.size(); i++) {
+            String className = fileNames.get(classFiles.get(i));
+            writeEncrypted(className, encrypted.get(i));
+            encryptClasses.add(className);
+            ConsoleLog.debug("加密：%s", className);
+        }
+
+        writePassHash();
+        return encryptClasses;
+    }
 
+    /**
+     * 写入启动时解密需要的信息：无密码模式的密码、机器码、信封加密的内容密钥和加密算法
+     */
+    private void writeKeyFiles() throws Exception {
         //无密码模式,自动生成一个密码
         if (isNoPwdMode()) {
             char[] randChars = EncryptUtils.randomChars(32);
             this.password = EncryptUtils.md5(randChars);
             //META-INF/.classes/org.springframework.config.Pass
-            File configPass = new File(metaDir, Constants.CONFIG_PASS);
-            IoUtils.writeBytes(configPass, StrUtils.toBytes(randChars));
+            writeMeta(Constants.CONFIG_PASS, StrUtils.toBytes(randChars));
         }
 
         //有机器码
         if (StrUtils.isNotEmpty(code)) {
             //META-INF/.classes/org.springframework.config.Code
-            File configCode = new File(metaDir, Constants.CONFIG_CODE);
-            IoUtils.writeBytes(configCode, StrUtils.toBytes(EncryptUtils.md5(code)));
+            writeMeta(Constants.CONFIG_CODE, StrUtils.toBytes(EncryptUtils.md5(code)));
         }
 
-        //加密另存
-        for (File classFile : classFiles) {
-            String className = classFile.getName();
-            if (className.endsWith(Constants.CLASS_EXT)) {
-                className = resolveClassName(classFile.getAbsolutePath(), true);
-            }
-            byte[] classBytes = IoUtils.readBytes(classFile);
-            char[] pass = StrUtils.merger(password, className.toCharArray());
-            classBytes = EncryptUtils.encryption(classBytes, pass, Constants.ENCRYPT_TYPE);
-            //有机器码，再用机器码加密一遍
-            if (StrUtils.isNotEmpty(code)) {
-                pass = StrUtils.merger(className.toCharArray(), code);
-                classBytes = EncryptUtils.encryption(classBytes, pass, Constants.ENCRYPT_TYPE);
-            }
-            IoUtils.writeBytes(new File(metaDir, className), classBytes);
-            encryptClasses.add(className);
-            ConsoleLog.debug("加密：%s", className);
+        //信封加密，随机生成内容密钥，用公钥包装后保存
+        if (publicKey != null && contentKey == null) {
+            contentKey = EncryptUtils.secureRandomKey(32);
+            //META-INF/.classes/org.springframework.config.Key
+            writeMeta(Constants.CONFIG_KEY, EncryptUtils.wrapKey(StrUtils.toBytes(contentKey), publicKey));
+        }
+
+        //记录加密算法，启动时按算法ID选择实现
+        //META-INF/.classes/org.springframework.config.Type
+        writeMeta(Constants.CONFIG_TYPE, cipherId.getBytes(StandardCharsets.UTF_8));
+
+        //确定密码后创建加密器，信封加密用内容密钥代替密码
+        if (cipher == null) {
+            cipher = CipherRegistry.get(cipherId).create(contentKey != null ? contentKey : password,
+                    StrUtils.isNotEmpty(code) ? code : new char[0]);
         }
+    }
 
-        //加密密码hash存储，用来验证密码是否正确
+    /**
+     * 加密密码hash存储，用来验证密码是否正确
+     */
+    private void writePassHash() throws IOException {
         char[] pchar = EncryptUtils.md5(StrUtils.merger(password, EncryptUtils.SALT));
         pchar = EncryptUtils.md5(StrUtils.merger(EncryptUtils.SALT, pchar));
-        IoUtils.writeBytes(new File(metaDir, Constants.CONFIG_PASSHASH), StrUtils.toBytes(pchar));
+        //META-INF/.classes/org.springframework.config.PassHash
+        writeMeta(Constants.CONFIG_PASSHASH, StrUtils.toBytes(pchar));
+    }
 
-        return encryptClasses;
+    /**
+     * 加密一个文件并保存，压缩模式下先压缩
+     *
+     * @param fileName 加密后的文件名，class 为全类名
+     * @param bytes    内容
+     */
+    private void encryptEntry(String fileName, byte[] bytes) throws Exception {
+        writeEncrypted(fileName, sealEntry(fileName, bytes));
+    }
+
+    /**
+     * 加密一个文件，压缩模式下先压缩，可以在多个工作线程中同时调用
+     *
+     * @param fileName 加密后的文件名，class 为全类名
+     * @param bytes    内容
+     * @return 密文
+     */
+    private byte[] sealEntry(String fileName, byte[] bytes) throws Exception {
+        if (dictionary != null) {
+            int raw = bytes.length;
+            bytes = DictCompressor.compress(bytes, dictionary);
+            synchronized (this) {
+                rawBytes += raw;
+                compressedBytes += bytes.length;
+            }
+        }
+        return encryptBytes(fileName, bytes);
+    }
+
+    /**
+     * 用选定的加密算法加密一个文件，加密器在 {@link #writeKeyFiles()} 中创建
+     *
+     * @param fileName 文件名
+     * @param bytes    内容
+     * @return 密文
+     */
+    private byte[] encryptBytes(String fileName, byte[] bytes) throws Exception {
+        return cipher.encrypt(bytes, fileName);
+    }
+
+    /**
+     * 保存加密后的文件，合并包模式下放入合并包
+     *
+     * @param fileName 文件名
+     * @param bytes    密文
+     */
+    private void writeEncrypted(String fileName, byte[] bytes) throws IOException {
+        if (pack) {
+            packEntries.put(fileName, bytes);
+        } else {
+            writeMeta(fileName, bytes);
+        }
+    }
+
+    /**
+     * 写入 META-INF/.classes 里的文件，流式加密时先放在内存中，最后写入加密后的 jar
+     *
+     * @param fileName 文件名
+     * @param bytes    内容
+     */
+    private void writeMeta(String fileName, byte[] bytes) throws IOException {
+        if (metaEntries != null) {
+            metaEntries.put(fileName, bytes);
+        } else {
+            IoUtils.writeBytes(new File(tempWork, "META-INF" + File.separator + Constants.FILE_NAME
+                    + File.separator + fileName), bytes);
+        }
+    }
+
+    /**
+     * 从要加密的 class 中训练压缩字典
+     *
+     * @param classFiles 需要加密的class文件
+     */
+    private void trainDictionary(List<File> classFiles) throws IOException {
+        if (!compress) {
+            return;
+        }
+        List<byte[]> samples = new ArrayList<>();
+        for (File classFile : classFiles) {
+            if (classFile.getName().endsWith(Constants.CLASS_EXT)) {
+                samples.add(IoUtils.readBytes(classFile));
+            }
+        }
+        trainSamples(samples);
+    }
+
+    private void trainSamples(List<byte[]> samples) {
+        this.dictionary = DictCompressor.train(samples);
+        ConsoleLog.debug("压缩字典：%d 字节", dictionary.length);
+    }
+
+    /**
+     * 加密保存压缩字典，放在 META-INF/.classes 里，输出压缩效果
+     */
+    private void writeDictionary() throws Exception {
+        if (dictionary == null) {
+            return;
+        }
+        //META-INF/.classes/org.springframework.config.Dict
+        writeEncrypted(Constants.CONFIG_DICT, encryptBytes(Constants.CONFIG_DICT, dictionary.clone()));
+        long total = compressedBytes + dictionary.length;
+        ConsoleLog.log("压缩：%d 字节 -> %d 字节(含字典 %d 字节)，减少 %.1f%%", rawBytes, total, dictionary.length,
+                rawBytes == 0 ? 0 : 100.0 * (rawBytes - total) / rawBytes);
+    }
+
+    /**
+     * 写入已加密类名索引，放在 META-INF/.classes 里，每行一个类名
+     */
+    private void writeClassIndex() throws IOException {
+        //META-INF/.classes/org.springframework.config.Index
+        writeMeta(Constants.CONFIG_INDEX, String.join("\n", encryptClassNames).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 把加密后的文件合并成一个包，放在 META-INF/.classes 里
+     */
+    private void writeClassPack() throws IOException {
+        if (!pack || packEntries.isEmpty()) {
+            return;
+        }
+        //META-INF/.classes/org.springframework.config.Pack
+        writeMeta(Constants.CONFIG_PACK, ClassPack.pack(packEntries));
+        ConsoleLog.debug("合并包：%d 个文件", packEntries.size());
     }
 
     /**
@@ -312,52 +912,180 @@ public class JarEncryptor {
      *
      * @param classFiles jar/war 下需要加密的class文件
      */
-    private void clearClassMethod(List<File> classFiles) throws IOException {
-        //初始化javassist
-        ClassPool pool = ClassPool.getDefault();
-        //[1]把所有涉及到的类加入到ClassPool的classpath
-        //[1.1]lib目录所有的jar加入classpath
-        ClassUtils.loadClassPath(pool, libDir);
-        ConsoleLog.debug("ClassPath：%s", libDir.getAbsolutePath());
+    private void clearClassMethod(List<File> classFiles) throws Exception {
+        //解析出类全名
+        Map<File, String> classNames = new HashMap<>();
+        for (File classFile : classFiles) {
+            classNames.put(classFile, resolveClassName(classFile.getAbsolutePath(), true));
+        }
+
+        //修改class方法体，并保存文件
+        parallel(classFiles, classFile -> {
+            String className = classNames.get(classFile);
+            byte[] bts = null;
+            try {
+                bts = stubClass(IoUtils.readBytes(classFile));
+            } catch (Exception e) {
+                ConsoleLog.debug("ERROR:" + e.getMessage());
+            }
+            if (bts != null) {
+                ConsoleLog.debug("清除方法体：%s", className);
+                IoUtils.writeBytes(classFile, bts);
+            }
+            return null;
+        });
+    }
 
-        //[1.2]外部依赖的lib加入classpath
+    /**
+     * 生成 Spring 组件索引，写入 classes 根目录，已有索引时合并
+     *
+     * @param allFilePath 所有文件
+     */
+    private void writeSpringIndex(List<String> allFilePath) throws IOException {
+        if (!springIndex) {
+            return;
+        }
+        //Spring 有索引时不再扫描，classes 根目录下的类全部索引；依赖 jar 中只索引加密包名下的类，包括排除加密的类
+        File classesRoot = classesDir.getAbsoluteFile();
+        File jarRoot = isJar() ? tempWork.getAbsoluteFile() : null;
+        List<File> indexFiles = new ArrayList<>();
+        Set<String> classPaths = new LinkedHashSet<>();
+        for (String path : allFilePath) {
+            if (!path.endsWith(Constants.CLASS_EXT)) {
+                continue;
+            }
+            File location = new File(resolveClassName(path, false)).getAbsoluteFile();
+            if (location.equals(classesRoot) || location.equals(jarRoot)
+                    || StrUtils.isMatchAny(packages, resolveClassName(path, true), false)) {
+                indexFiles.add(new File(path));
+                classPaths.add(resolveClassName(path, false));
+            }
+        }
+        ClassPool pool = new ClassPool(true);
+        ClassUtils.loadClassPath(pool, libDir);
         for (String path : classPath) {
             ClassUtils.loadClassPath(pool, new File(path));
-            ConsoleLog.debug("ClassPath：%s", path);
         }
-        //[1.3]要修改的class所在的目录（-INF/classes 和 libjar）加入classpath
-        List<String> classPaths = new ArrayList<>();
-        classFiles.forEach(classFile -> {
-            String classPath = resolveClassName(classFile.getAbsolutePath(), false);
-            if (classPaths.contains(classPath)) {
-                return;
-            }
+        for (String path : classPaths) {
             try {
-                pool.insertClassPath(classPath);
+                pool.insertClassPath(path);
             } catch (NotFoundException e) {
                 //Ignore
             }
-            classPaths.add(classPath);
-            ConsoleLog.debug("ClassPath：%s", classPath);
-        });
+        }
+        List<byte[]> classes = new ArrayList<>();
+        for (File file : indexFiles) {
+            classes.add(IoUtils.readBytes(file));
+        }
 
-        //[2]修改class方法体，并保存文件
-        for (File classFile : classFiles) {
-            //解析出类全名
-            String className = resolveClassName(classFile.getAbsolutePath(), true);
-            byte[] bts = null;
+        File root = isJar() && !classesDir.exists() ? tempWork : classesDir;
+        File indexFile = new File(root, SpringIndexer.INDEX_FILE);
+        byte[] bytes = buildSpringIndex(pool, classes, indexFile.exists() ? IoUtils.readBytes(indexFile) : null);
+        if (bytes != null) {
+            IoUtils.writeBytes(indexFile, bytes);
+        }
+    }
+
+    /**
+     * 生成 Spring 组件索引
+     *
+     * @param pool     查找注解和父类
+     * @param classes  要索引的类
+     * @param existing 原有的索引，没有时为 null
+     * @return 合并后的索引，没有找到组件且原来没有索引时为 null，不写入空索引
+     */
+    private byte[] buildSpringIndex(ClassPool pool, List<byte[]> classes, byte[] existing) throws IOException {
+        SpringIndexer indexer = new SpringIndexer(pool);
+        for (byte[] bytes : classes) {
             try {
-                bts = ClassUtils.rewriteAllMethods(pool, className);
-            } catch (Exception e) {
+                indexer.add(bytes);
+            } catch (IOException e) {
                 ConsoleLog.debug("ERROR:" + e.getMessage());
             }
-            if (bts != null) {
-                ConsoleLog.debug("清除方法体：%s", className);
-                IoUtils.writeBytes(classFile, bts);
+        }
+        if (indexer.size() == 0 && existing == null) {
+            ConsoleLog.log("Spring 组件索引：没有找到组件，不生成索引");
+            return null;
+        }
+        ConsoleLog.log("Spring 组件索引：%d 个类", indexer.size());
+        ConsoleLog.log("WARN: Spring 有索引时不再扫描 classpath，其他依赖 jar 中的组件需要 jar 自带索引");
+        return indexer.merge(existing);
+    }
+
+    /**
+     * 清空一个类的方法体，精简模式下同时重建常量池，可以在多个工作线程中同时调用
+     *
+     * @param bytes class 文件内容
+     * @return 清空方法体后的 class
+     */
+    private byte[] stubClass(byte[] bytes) {
+        byte[] stub = ClassUtils.rewriteAllMethods(bytes, compact);
+        if (compact) {
+            synchronized (this) {
+                stubRawBytes += bytes.length;
+                stubBytes += stub.length;
+            }
+        }
+        return stub;
+    }
+
+    /**
+     * 输出精简效果
+     */
+    private void logCompact() {
+        if (!compact) {
+            return;
+        }
+        ConsoleLog.log("精简：class %d 字节 -> %d 字节，减少 %.1f%%", stubRawBytes, stubBytes,
+                stubRawBytes == 0 ? 0 : 100.0 * (stubRawBytes - stubBytes) / stubRawBytes);
+    }
+
+    /**
+     * 用 {@link #threads} 个工作线程处理，结果按输入的顺序返回，输出与单线程处理相同
+     *
+     * @param items 输入
+     * @param task  处理方法，需要线程安全
+     * @return 处理结果
+     */
+    private <T, R> List<R> parallel(List<T> items, Task<T, R> task) throws Exception {
+        List<R> results = new ArrayList<>(items.size());
+        if (threads <= 1 || items.size() <= 1) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, items.size()),
+                daemonThreads("classfinal-worker"));
+        try {
+            List<Future<R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(executor.submit(() -> task.apply(item)));
             }
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
+
     /**
      * 向jar文件中添加classfinal的代码
      */
@@ -397,14 +1125,19 @@ public class JarEncryptor {
 
         //把 javaagent 信息加入到 MANIFEST.MF
         File manifest = new File(this.tempWork, "META-INF/MANIFEST.MF");
-        String preMain = "Premain-Class: " + CoreAgent.class.getName();
-        String[] content = {};
-        if (manifest.exists()) {
-            content = IoUtils.readUtf8(manifest).split("\r\n");
-        }
+        IoUtils.writeUtf8(manifest, addPremainClass(manifest.exists() ? IoUtils.readUtf8(manifest) : null));
+    }
 
-        String str = StrUtils.insertBefore(content, preMain, s -> s.startsWith("Main-Class:"));
-        IoUtils.writeUtf8(manifest, str + "\r\n\r\n");
+    /**
+     * 在 MANIFEST.MF 的 Main-Class 前加入 Premain-Class
+     *
+     * @param manifest 原内容，没有时为 null
+     * @return 新内容
+     */
+    static String addPremainClass(String manifest) {
+        String preMain = "Premain-Class: " + CoreAgent.class.getName();
+        String[] content = manifest == null ? new String[0] : manifest.split("\r\n");
+        return StrUtils.insertBefore(content, preMain, s -> s.startsWith("Main-Class:")) + "\r\n\r\n";
     }
 
     /**
@@ -420,6 +1153,10 @@ public class JarEncryptor {
                 if (fileName.equals(className + Constants.CLASS_EXT)) {
                     return true;
                 }
+                //支持内部类匹配
+                if (fileName.startsWith(className + "$")) {
+                    return true;
+                }
                 //支持合成类匹配
                 Matcher matcher = SYNTHETIC_PATTERN.matcher(fileName);
                 if (matcher.find()) {
@@ -445,29 +1182,12 @@ public class JarEncryptor {
             return;
         }
 
-        //支持的框架
-        String[] supportFrameworks = {"spring"};
         //需要注入解密功能的class
-        List<File> aopClass = new ArrayList<>(supportFrameworks.length);
-
-        for (String framework : supportFrameworks) {
-            InjectInfo injectInfo = injectMap.get(framework);
-            String classMethod = injectInfo.getClassMethod();
-            int line = injectInfo.getLine();
-            String javaCode = injectInfo.getCode("${passchar}", toCharArrayCode(password));
-            byte[] bytes = null;
-            try {
-                String currentPath = this.getClass().getProtectionDomain().getCodeSource().getLocation().getPath();
-                ClassUtils.loadClassPath(new File(currentPath));
-                bytes = ClassUtils.insertCode(classMethod, javaCode, line, libDir);
-            } catch (Exception e) {
-                ConsoleLog.log("%s:%s", e.getClass().getName(), e.getMessage());
-            }
-            if (bytes != null) {
-                File classFile = new File(tempWork, classMethod.split("#")[0] + ".class");
-                IoUtils.writeBytes(classFile, bytes);
-                aopClass.add(classFile);
-            }
+        List<File> aopClass = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : injectConfigDecrypt(null).entrySet()) {
+            File classFile = new File(tempWork, entry.getKey() + ".class");
+            IoUtils.writeBytes(classFile, entry.getValue());
+            aopClass.add(classFile);
         }
 
         //加密读取配置文件的类
@@ -495,6 +1215,39 @@ public class JarEncryptor {
     }
 
 
+    /**
+     * 给读取配置文件的框架类注入解密代码
+     *
+     * @param pool 类字节码池，为 null 时用默认的类字节码池加载 lib 目录
+     * @return 全类名 -> 注入后的字节，注入失败的类不返回
+     */
+    private Map<String, byte[]> injectConfigDecrypt(ClassPool pool) {
+        //支持的框架
+        String[] supportFrameworks = {"spring"};
+        Map<String, byte[]> result = new LinkedHashMap<>();
+        for (String framework : supportFrameworks) {
+            InjectInfo injectInfo = injectMap.get(framework);
+            String classMethod = injectInfo.getClassMethod();
+            int line = injectInfo.getLine();
+            String javaCode = injectInfo.getCode("${passchar}", toCharArrayCode(password));
+            try {
+                String currentPath = this.getClass().getProtectionDomain().getCodeSource().getLocation().getPath();
+                byte[] bytes;
+                if (pool == null) {
+                    ClassUtils.loadClassPath(new File(currentPath));
+                    bytes = ClassUtils.insertCode(classMethod, javaCode, line, libDir);
+                } else {
+                    ClassUtils.loadClassPath(pool, new File(currentPath));
+                    bytes = ClassUtils.insertCode(pool, classMethod, javaCode, line);
+                }
+                result.put(classMethod.split("#")[0], bytes);
+            } catch (Exception e) {
+                ConsoleLog.log("%s:%s", e.getClass().getName(), e.getMessage());
+            }
+        }
+        return result;
+    }
+
     /**
      * 转换成 char 数组创建内容代码
      * <pre> new char[]{'a','b', 'c'} => "{'a', 'b', 'c'}"</pre>
@@ -636,6 +1389,132 @@ public class JarEncryptor {
         this.code = code;
     }
 
+    public void setPack(boolean pack) {
+        this.pack = pack;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public void setStream(boolean stream) {
+        this.stream = stream;
+    }
+
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    public void setSpringIndex(boolean springIndex) {
+        this.springIndex = springIndex;
+    }
+
+    /**
+     * 设置并行加密和清空方法体的线程数，同样的输入输出与单线程相同
+     *
+     * @param threads 线程数，小于1时使用全部CPU核数
+     */
+    public void setThreads(int threads) {
+        this.threads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    public void setEncryptType(EncryptType encryptType) {
+        setCipher(encryptType.name());
+    }
+
+    /**
+     * 设置加密算法
+     *
+     * @param cipherId 算法ID，内置 MD5、AES、AES_GCM，或通过 {@link CipherProvider} 注册的算法
+     * @throws IllegalArgumentException 没有注册的算法
+     */
+    public void setCipher(String cipherId) {
+        this.cipherId = CipherRegistry.get(cipherId).getId().toUpperCase();
+    }
+
+    /**
+     * 使用 RSA 信封加密：随机内容密钥用公钥包装后存入 jar 代替密码，运行时需要对应的私钥；没有指定加密算法时默认用 AES/GCM
+     *
+     * @param publicKey base64编码的公钥
+     */
+    public void setPublicKey(char[] publicKey) {
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * 流式加密中的一个文件
+     */
+    static class ZipItem {
+        //读取结束标记
+        static final ZipItem END = new ZipItem(null, null, null, 0);
+
+        //所在的依赖 jar，不在依赖 jar 中为 null
+        final String lib;
+        //文件名，目录以 / 结尾；依赖 jar 的开始标记为 null
+        final String name;
+        //内容，目录为 null
+        final byte[] bytes;
+        final long time;
+
+        ZipItem(String lib, String name, byte[] bytes, long time) {
+            this.lib = lib;
+            this.name = name;
+            this.bytes = bytes;
+            this.time = time;
+        }
+
+        ZipItem withBytes(byte[] bytes) {
+            return new ZipItem(lib, name, bytes, time);
+        }
+    }
+
+    /**
+     * 流式写入的压缩包，补全上级目录，同名文件只写第一个
+     */
+    static class ZipSink implements Closeable {
+        private final OutputStream out;
+        private final ZipOutputStream zos;
+        private final Set<String> names = new HashSet<>();
+
+        ZipSink(OutputStream out) {
+            this.out = out;
+            this.zos = new ZipOutputStream(out);
+        }
+
+        void write(String name, byte[] bytes, long time) throws IOException {
+            if (names.contains(name)) {
+                return;
+            }
+            //按目录查找资源时需要目录 entry
+            int index = name.lastIndexOf('/', name.length() - 2);
+            if (index > 0) {
+                write(name.substring(0, index + 1), null, time);
+            }
+            names.add(name);
+            JarUtils.writeEntry(zos, name, bytes, time);
+        }
+
+        /**
+         * 结束写入，返回内存中的压缩包
+         */
+        byte[] finish() throws IOException {
+            zos.close();
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            zos.close();
+        }
+    }
+
+    /**
+     * 工作线程中执行的任务
+     */
+    interface Task<T, R> {
+        R apply(T item) throws Exception;
+    }
+
     static class InjectInfo {
         private final String classMethod;
         private final String code;
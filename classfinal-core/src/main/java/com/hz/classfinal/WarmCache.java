@@ -0,0 +1,238 @@
+package com.hz.classfinal;
+
+import com.hz.classfinal.util.ClassPack;
+import com.hz.classfinal.util.ConsoleLog;
+import com.hz.classfinal.util.EncryptUtils;
+import com.hz.classfinal.util.JarUtils;
+import com.hz.classfinal.util.StrUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 绑定机器的项目在本机的解密缓存
+ * <p>
+ * 第一次启动时记录解密后的类，退出时合并成一个包（格式同 {@link ClassPack}），用本机机器码和密码派生的 AES 密钥
+ * 整体加密后保存到 jar 同级目录的 {@code xxx-classcache.bin}；之后启动时顺序读入整个文件并解密，拆成每个类一份，
+ * 类加载时直接取出并从缓存中删除，不再做两层解密和 zip 查找，加载完的类不再占用内存。文件头记录 jar 的指纹，jar 变化、换了机器或密码时缓存失效，退出时重新生成。
+ * <pre>
+ * int      magic
+ * int      版本
+ * byte[32] jar 指纹
+ * byte[12] IV
+ * AES/GCM 加密的合并包，文件头作为附加认证数据
+ * </pre>
+ *
+ * @author roseboy
+ */
+public class WarmCache {
+
+    //文件头标记
+    static final int MAGIC = 0x43465743;
+    //格式版本
+    static final int VERSION = 1;
+    //IV 长度
+    static final int IV_LENGTH = 12;
+    //认证标签长度(位)
+    static final int TAG_BITS = 128;
+    //文件头长度
+    static final int HEADER_LENGTH = 8 + 32 + IV_LENGTH;
+
+    //缓存文件
+    private final File file;
+    //jar 指纹
+    private final byte[] fingerprint;
+    //AES 密钥
+    private final SecretKeySpec key;
+    //已加载的缓存，类名 -> 解密后的字节，取出后删除，未命中时为 null
+    private volatile Map<String, byte[]> classes;
+    //记录的类名 -> 解密后的字节，不记录时为 null
+    private volatile Map<String, byte[]> recorded;
+
+    WarmCache(File file, byte[] fingerprint, SecretKeySpec key) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.key = key;
+    }
+
+    /**
+     * 创建 jar 的解密缓存，只支持绑定了机器的 jar/war 包
+     *
+     * @param rootPath classPath 根路径
+     * @param password 解密的密码，无密码模式为 #
+     * @return 解密缓存，不支持时返回 null
+     * @throws IOException IO异常
+     */
+    public static WarmCache create(String rootPath, char[] password) throws IOException {
+        File cacheFile = cacheFile(rootPath);
+        if (cacheFile == null) {
+            return null;
+        }
+        File jarFile = new File(rootPath);
+        char[] code = JarDecryptor.getInstance().getMarchinCode(jarFile);
+        byte[] fingerprint = JarUtils.fingerprint(jarFile);
+        if (code.length == 0 || fingerprint == null) {
+            return null;
+        }
+        //无密码启动,读取隐藏的密码
+        if (password.length == 1 && password[0] == '#') {
+            password = JarDecryptor.readPassFromJar(jarFile);
+        }
+        return new WarmCache(cacheFile, fingerprint, deriveKey(code, password));
+    }
+
+    /**
+     * 缓存文件，只支持 jar/war 包
+     *
+     * @param rootPath classPath 根路径
+     * @return 缓存文件，不支持时返回 null
+     */
+    public static File cacheFile(String rootPath) {
+        if (!rootPath.endsWith(Constants.JAR_EXT) && !rootPath.endsWith(Constants.WAR_EXT)) {
+            return null;
+        }
+        File jarFile = new File(rootPath);
+        String jarName = jarFile.getName();
+        return new File(jarFile.getParentFile(), jarName.substring(0, jarName.length() - 4) + "-classcache.bin");
+    }
+
+    /**
+     * 由机器码和密码派生 AES 密钥：{@code sha256(SALT+code+SALT+password)} 的前16字节
+     *
+     * @param code     机器码
+     * @param password 密码
+     * @return 密钥
+     */
+    static SecretKeySpec deriveKey(char[] code, char[] password) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(StrUtils.toBytes(StrUtils.merger(EncryptUtils.SALT, code, EncryptUtils.SALT, password)));
+            return new SecretKeySpec(md.digest(), 0, 16, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 读取缓存文件，文件不存在、jar 已变化或无法解密时返回 false
+     *
+     * @return 命中返回 true
+     */
+    public boolean load() {
+        if (!file.exists() || file.length() < HEADER_LENGTH) {
+            return false;
+        }
+        long t1 = System.currentTimeMillis();
+        try {
+            //一次顺序读入整个文件
+            byte[] data = Files.readAllBytes(file.toPath());
+            ByteBuffer head = ByteBuffer.wrap(data, 0, HEADER_LENGTH);
+            if (head.getInt() != MAGIC || head.getInt() != VERSION) {
+                return false;
+            }
+            byte[] jarHash = new byte[32];
+            head.get(jarHash);
+            if (!Arrays.equals(jarHash, fingerprint)) {
+                ConsoleLog.debug("jar 已变化，解密缓存失效");
+                return false;
+            }
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, data, HEADER_LENGTH - IV_LENGTH, IV_LENGTH));
+            cipher.updateAAD(data, 0, HEADER_LENGTH);
+            ClassPack pack = ClassPack.wrap(ByteBuffer.wrap(cipher.doFinal(data, HEADER_LENGTH, data.length - HEADER_LENGTH)));
+            //拆成每个类一份，整个包不常驻内存，类取出后就可以回收
+            Map<String, byte[]> loaded = new ConcurrentHashMap<>();
+            for (String name : pack.names()) {
+                loaded.put(name, pack.read(name));
+            }
+            this.classes = loaded;
+        } catch (IOException | GeneralSecurityException e) {
+            ConsoleLog.debug("解密缓存无效: %s", e.getMessage());
+            return false;
+        }
+        ConsoleLog.debug("读取解密缓存: %s (%d ms)", file, System.currentTimeMillis() - t1);
+        return true;
+    }
+
+    /**
+     * 取出缓存中的类，取出后不再保留
+     *
+     * @param className 类名
+     * @return 解密后的字节，未命中返回 null
+     */
+    public byte[] read(String className) {
+        Map<String, byte[]> current = classes;
+        return current == null ? null : current.remove(className);
+    }
+
+    /**
+     * 记录解密后的类，JVM 退出时写入缓存文件
+     */
+    public void startRecording() {
+        recorded = new ConcurrentHashMap<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                save();
+            } catch (IOException | GeneralSecurityException e) {
+                ConsoleLog.error("保存解密缓存失败: %s", e.getMessage());
+            }
+        }, "classfinal-warmcache"));
+        ConsoleLog.debug("记录解密缓存: %s", file);
+    }
+
+    /**
+     * 记录一个解密后的类
+     *
+     * @param className 类名
+     * @param bytes     解密后的字节
+     */
+    public void record(String className, byte[] bytes) {
+        Map<String, byte[]> current = recorded;
+        if (current != null) {
+            current.putIfAbsent(className, bytes);
+        }
+    }
+
+    /**
+     * 加密并保存记录的类，先写临时文件再替换，避免多个进程同时写入时读到不完整的文件
+     */
+    void save() throws IOException, GeneralSecurityException {
+        Map<String, byte[]> current = recorded;
+        if (current == null || current.isEmpty()) {
+            return;
+        }
+        byte[] packBytes = ClassPack.pack(new TreeMap<>(current));
+        byte[] iv = new byte[IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION).put(fingerprint).put(iv);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+        cipher.updateAAD(header.array());
+        byte[] encrypted = cipher.doFinal(packBytes);
+
+        File temp = new File(file.getParentFile(), file.getName() + "." + System.nanoTime() + ".tmp");
+        try {
+            Files.write(temp.toPath(), header.array());
+            Files.write(temp.toPath(), encrypted, StandardOpenOption.APPEND);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
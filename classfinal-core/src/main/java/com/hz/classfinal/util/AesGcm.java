@@ -0,0 +1,121 @@
+package com.hz.classfinal.util;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * AES/GCM 加密，带认证，用于 {@link EncryptType#AES_GCM}
+ * <p>
+ * 由密码和机器码只派生一次主密钥，解密时每个线程复用一个 {@link Cipher}，AES 的轮密钥随 Cipher 缓存，
+ * 解密每个文件时只需用新的 IV 重新初始化。每个文件的 IV 由 HMAC(文件名+内容) 生成，同样的输入加密结果相同，
+ * 文件名作为附加认证数据，密文不能被换到其他文件名下。
+ * <pre>
+ * byte[12] IV
+ * byte[]   密文 + 16字节认证标签
+ * </pre>
+ *
+ * @author roseboy
+ */
+public class AesGcm implements EntryCipher {
+
+    //IV 长度
+    static final int IV_LENGTH = 12;
+    //认证标签长度(位)
+    static final int TAG_BITS = 128;
+
+    //加密密钥
+    private final SecretKeySpec key;
+    //生成 IV 的密钥
+    private final SecretKeySpec ivKey;
+    //解密时每个线程一个 Cipher
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    //每个线程一个 Mac
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * 构造方法，派生主密钥
+     *
+     * @param password 密码
+     * @param code     机器码，没有绑定机器时为空数组
+     */
+    public AesGcm(char[] password, char[] code) {
+        byte[] material = StrUtils.toBytes(StrUtils.merger(EncryptUtils.SALT, password, EncryptUtils.SALT, code));
+        this.key = new SecretKeySpec(sha256("key", material), 0, 16, "AES");
+        this.ivKey = new SecretKeySpec(sha256("iv", material), "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(ivKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * 加密
+     *
+     * @param msg  内容
+     * @param name 文件名
+     * @return IV + 密文
+     */
+    @Override
+    public byte[] encrypt(byte[] msg, String name) throws GeneralSecurityException {
+        byte[] aad = name.getBytes(StandardCharsets.UTF_8);
+        //文件名前加长度，不同的文件名和内容拼接后不会相同
+        Mac mac = macs.get();
+        mac.update(new byte[]{(byte) (aad.length >>> 24), (byte) (aad.length >>> 16), (byte) (aad.length >>> 8), (byte) aad.length});
+        mac.update(aad);
+        byte[] iv = mac.doFinal(msg);
+
+        //同样的输入 IV 相同，Cipher 不允许用相同的 IV 重复加密，加密时不复用
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv, 0, IV_LENGTH));
+        cipher.updateAAD(aad);
+        byte[] result = new byte[IV_LENGTH + cipher.getOutputSize(msg.length)];
+        System.arraycopy(iv, 0, result, 0, IV_LENGTH);
+        cipher.doFinal(msg, 0, msg.length, result, IV_LENGTH);
+        return result;
+    }
+
+    /**
+     * 解密并校验
+     *
+     * @param msg  IV + 密文
+     * @param name 文件名
+     * @return 明文
+     * @throws GeneralSecurityException 密钥错误或密文被修改
+     */
+    @Override
+    public byte[] decrypt(byte[] msg, String name) throws GeneralSecurityException {
+        if (msg.length < IV_LENGTH + TAG_BITS / 8) {
+            throw new GeneralSecurityException("密文长度错误");
+        }
+        Cipher cipher = ciphers.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, msg, 0, IV_LENGTH));
+        cipher.updateAAD(name.getBytes(StandardCharsets.UTF_8));
+        return cipher.doFinal(msg, IV_LENGTH, msg.length - IV_LENGTH);
+    }
+
+    private static byte[] sha256(String label, byte[] material) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(label.getBytes(StandardCharsets.UTF_8));
+            return md.digest(material);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.hz.classfinal.util;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * 加密算法的扩展接口，通过 {@link java.util.ServiceLoader} 加载
+ * <p>
+ * 在 {@code META-INF/services/com.hz.classfinal.util.CipherProvider} 中注册实现类，加密时用 {@code -type=算法ID} 选择，
+ * 算法ID写入加密后 jar 的 {@code META-INF/.classes/org.springframework.config.Type}，启动时按ID自动选择实现。
+ * 实现类和注册文件需要在启动时的 classpath 中，不能被加密。
+ *
+ * @author roseboy
+ * @see CipherRegistry
+ */
+public interface CipherProvider {
+
+    /**
+     * 算法ID，写入加密后的 jar
+     *
+     * @return 算法ID，大写
+     */
+    String getId();
+
+    /**
+     * 创建一个 jar 使用的加密解密器，密钥在这里派生一次
+     *
+     * @param password 密码
+     * @param code     机器码，没有绑定机器时为空数组
+     * @return 加密解密器
+     * @throws GeneralSecurityException 密钥错误
+     */
+    EntryCipher create(char[] password, char[] code) throws GeneralSecurityException;
+}
@@ -0,0 +1,138 @@
+package com.hz.classfinal.util;
+
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * 已注册的加密算法
+ * <p>
+ * 内置 MD5(MD5异或)、AES(AES/ECB)、AES_GCM，其他实现通过 {@link ServiceLoader} 加载 {@link CipherProvider}，
+ * 与内置算法ID相同的实现不会覆盖内置算法。
+ *
+ * @author roseboy
+ */
+public class CipherRegistry {
+
+    /**
+     * 按算法ID获取实现
+     *
+     * @param id 算法ID，不区分大小写
+     * @return 实现
+     * @throws IllegalArgumentException 没有注册的算法
+     */
+    public static CipherProvider get(String id) {
+        CipherProvider provider = Holder.PROVIDERS.get(id.trim().toUpperCase());
+        if (provider == null) {
+            throw new IllegalArgumentException("不支持的加密方式: " + id + "，可用: " + ids());
+        }
+        return provider;
+    }
+
+    /**
+     * 已注册的算法ID
+     *
+     * @return 算法ID
+     */
+    public static Set<String> ids() {
+        return Collections.unmodifiableSet(Holder.PROVIDERS.keySet());
+    }
+
+    private static Map<String, CipherProvider> load() {
+        Map<String, CipherProvider> providers = new LinkedHashMap<>();
+        providers.put("MD5", new LayeredProvider("MD5", EncryptType.MD5));
+        providers.put("AES", new LayeredProvider("AES", EncryptType.AES));
+        providers.put("AES_GCM", new AesGcmProvider());
+        Iterator<CipherProvider> it = ServiceLoader.load(CipherProvider.class, CipherRegistry.class.getClassLoader()).iterator();
+        while (true) {
+            try {
+                if (!it.hasNext()) {
+                    break;
+                }
+                CipherProvider provider = it.next();
+                providers.putIfAbsent(provider.getId().toUpperCase(), provider);
+            } catch (ServiceConfigurationError e) {
+                ConsoleLog.debug("加载加密算法失败: %s", e.getMessage());
+            }
+        }
+        return providers;
+    }
+
+    /**
+     * 第一次使用时加载
+     */
+    static class Holder {
+        static final Map<String, CipherProvider> PROVIDERS = load();
+    }
+
+    /**
+     * 原有的两层加密：先用密码加密，有机器码时再用机器码加密一遍
+     */
+    static class LayeredProvider implements CipherProvider {
+        private final String id;
+        private final EncryptType type;
+
+        LayeredProvider(String id, EncryptType type) {
+            this.id = id;
+            this.type = type;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public EntryCipher create(char[] password, char[] code) {
+            return new LayeredCipher(type, password, code);
+        }
+    }
+
+    static class LayeredCipher implements EntryCipher {
+        private final EncryptType type;
+        private final char[] password;
+        private final char[] code;
+
+        LayeredCipher(EncryptType type, char[] password, char[] code) {
+            this.type = type;
+            this.password = password;
+            this.code = code;
+        }
+
+        @Override
+        public byte[] encrypt(byte[] msg, String name) throws GeneralSecurityException {
+            char[] chars = name.toCharArray();
+            msg = EncryptUtils.encryption(msg, password, chars, type);
+            if (code.length > 0) {
+                msg = EncryptUtils.encryption(msg, chars, code, type);
+            }
+            return msg;
+        }
+
+        @Override
+        public byte[] decrypt(byte[] msg, String name) throws GeneralSecurityException {
+            char[] chars = name.toCharArray();
+            if (code.length > 0) {
+                msg = EncryptUtils.decryption(msg, chars, code, type);
+            }
+            return EncryptUtils.decryption(msg, password, chars, type);
+        }
+    }
+
+    static class AesGcmProvider implements CipherProvider {
+        @Override
+        public String getId() {
+            return "AES_GCM";
+        }
+
+        @Override
+        public EntryCipher create(char[] password, char[] code) {
+            return new AesGcm(password, code);
+        }
+    }
+}
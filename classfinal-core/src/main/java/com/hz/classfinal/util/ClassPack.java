@@ -0,0 +1,275 @@
+package com.hz.classfinal.util;
+
+import com.hz.classfinal.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 加密文件合并包
+ * <p>
+ * 所有加密后的文件合并成一个不压缩的包存放在 {@code META-INF/.classes} 下，包头是按文件名排序的偏移表，
+ * 运行时将整个包映射到内存，按偏移表直接截取，无需每个类都查找 zip 条目和解压。
+ * <pre>
+ * int   magic
+ * int   文件数量
+ * 偏移表: short 文件名长度, byte[] 文件名(UTF-8), int 偏移, int 长度
+ * 数据区
+ * </pre>
+ * 整个包映射成一个 {@link ByteBuffer}，偏移都是 int，所以包的大小不能超过 {@link #MAX_SIZE}。
+ *
+ * @author roseboy
+ */
+public class ClassPack {
+
+    //包在 jar 中的路径
+    public static final String PACK_PATH = Constants.META_INF + "/" + Constants.FILE_NAME + "/" + Constants.CONFIG_PACK;
+    //文件头标记
+    static final int MAGIC = 0x43465041;
+    //包的最大字节数，ByteBuffer 的位置是 int
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+    //没有合并包
+    private static final ClassPack NONE = new ClassPack(ByteBuffer.allocate(0), 0, new HashMap<>());
+    //已打开的包
+    private static final Map<String, ClassPack> PACKS = new ConcurrentHashMap<>();
+
+    //包数据
+    private final ByteBuffer buffer;
+    //数据区开始位置
+    private final int dataStart;
+    //文件名 -> 数据区偏移(高32位)|长度(低32位)
+    private final Map<String, Long> offsets;
+
+    private ClassPack(ByteBuffer buffer, int dataStart, Map<String, Long> offsets) {
+        this.buffer = buffer;
+        this.dataStart = dataStart;
+        this.offsets = offsets;
+    }
+
+    /**
+     * 把加密后的文件合并成包
+     *
+     * @param entries 文件名和内容，需要已排序
+     * @return 包的字节
+     * @throws IOException IO异常，包超过 {@link #MAX_SIZE} 时抛出
+     */
+    public static byte[] pack(Map<String, byte[]> entries) throws IOException {
+        //先计算大小，超出时不写入，避免偏移溢出
+        long size = 8;
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            size += 2 + entry.getKey().getBytes(StandardCharsets.UTF_8).length + 8 + entry.getValue().length;
+        }
+        if (size > MAX_SIZE) {
+            throw new IOException("合并包超过 2GB，请不要使用 -pack");
+        }
+        ByteArrayOutputStream table = new ByteArrayOutputStream((int) size);
+        DataOutputStream out = new DataOutputStream(table);
+        out.writeInt(MAGIC);
+        out.writeInt(entries.size());
+        int offset = 0;
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeInt(offset);
+            out.writeInt(entry.getValue().length);
+            offset += entry.getValue().length;
+        }
+        for (byte[] bytes : entries.values()) {
+            out.write(bytes);
+        }
+        out.flush();
+        return table.toByteArray();
+    }
+
+    /**
+     * 打开 jar 或目录中的合并包，同一个路径只打开一次，没有合并包的结果也会缓存
+     *
+     * @param workDir jar文件或目录
+     * @return 合并包，没有合并包返回 null
+     */
+    public static ClassPack open(File workDir) {
+        String key = workDir.getAbsolutePath();
+        //已打开过的直接返回，不进入 computeIfAbsent 的加锁
+        ClassPack pack = PACKS.get(key);
+        if (pack == null) {
+            pack = PACKS.computeIfAbsent(key, path -> {
+                try {
+                    ByteBuffer buffer = map(workDir);
+                    return buffer == null ? NONE : parse(buffer);
+                } catch (IOException e) {
+                    ConsoleLog.debug("读取合并包失败: %s", e.getMessage());
+                    return NONE;
+                }
+            });
+        }
+        return pack == NONE ? null : pack;
+    }
+
+    /**
+     * 解析内存中的合并包
+     *
+     * @param buffer 包数据
+     * @return 合并包
+     * @throws IOException 格式错误
+     */
+    public static ClassPack wrap(ByteBuffer buffer) throws IOException {
+        return parse(buffer);
+    }
+
+    /**
+     * 读取包中的文件
+     *
+     * @param name 文件名
+     * @return 文件内容，不存在返回 null
+     */
+    public byte[] read(String name) {
+        Long offset = offsets.get(name);
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(dataStart + (int) (offset >>> 32));
+        byte[] bytes = new byte[(int) (offset & 0xFFFFFFFFL)];
+        slice.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 打开包中文件的输入流，直接读取映射的内存，不复制
+     *
+     * @param name 文件名
+     * @return 输入流，不存在返回 null
+     */
+    public InputStream openStream(String name) {
+        Long offset = offsets.get(name);
+        if (offset == null) {
+            return null;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        int start = dataStart + (int) (offset >>> 32);
+        slice.position(start);
+        slice.limit(start + (int) (offset & 0xFFFFFFFFL));
+        return new BufferInputStream(slice);
+    }
+
+    /**
+     * 包中的文件名
+     *
+     * @return 文件名
+     */
+    public Iterable<String> names() {
+        return offsets.keySet();
+    }
+
+    /**
+     * 映射合并包，jar 中不压缩存储的包直接映射 jar 文件的对应区域
+     *
+     * @param workDir jar文件或目录
+     * @return 包数据，没有合并包返回 null
+     * @throws IOException IO异常
+     */
+    private static ByteBuffer map(File workDir) throws IOException {
+        if (workDir.isFile()) {
+            long[] region = JarUtils.findStoredEntry(workDir, PACK_PATH);
+            if (region != null) {
+                return mapFile(workDir, region[0], region[1]);
+            }
+            byte[] bytes = ZipFileCache.readEntry(workDir, PACK_PATH);
+            return bytes == null ? null : ByteBuffer.wrap(bytes);
+        }
+        File file = new File(workDir, PACK_PATH);
+        return file.exists() ? mapFile(file, 0, file.length()) : null;
+    }
+
+    private static ByteBuffer mapFile(File file, long offset, long size) throws IOException {
+        if (size > MAX_SIZE) {
+            throw new IOException("合并包超过 2GB: " + size);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        }
+    }
+
+    /**
+     * 解析偏移表
+     *
+     * @param buffer 包数据
+     * @return 合并包
+     * @throws IOException 格式错误
+     */
+    private static ClassPack parse(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("合并包格式错误");
+        }
+        ByteBuffer header = buffer.duplicate();
+        header.position(4);
+        int count = header.getInt();
+        Map<String, Long> offsets = new HashMap<>(count * 2);
+        long dataSize = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[header.getShort() & 0xFFFF];
+            header.get(name);
+            long offset = header.getInt() & 0xFFFFFFFFL;
+            long length = header.getInt() & 0xFFFFFFFFL;
+            offsets.put(new String(name, StandardCharsets.UTF_8), (offset << 32) | length);
+            dataSize = Math.max(dataSize, offset + length);
+        }
+        //偏移表指向包外的数据时不使用，避免读取时越界
+        if (header.position() + dataSize > buffer.limit()) {
+            throw new IOException("合并包格式错误");
+        }
+        return new ClassPack(buffer, header.position(), offsets);
+    }
+
+    /**
+     * 读取 ByteBuffer 剩余内容的输入流
+     */
+    static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skip = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skip);
+            return skip;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
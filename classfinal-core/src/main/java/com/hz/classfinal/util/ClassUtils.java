@@ -3,9 +3,11 @@ package com.hz.classfinal.util;
 import com.hz.classfinal.Constants;
 import javassist.*;
 import javassist.bytecode.*;
-import javassist.compiler.CompileError;
-import javassist.compiler.Javac;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.nio.file.Files;
 import java.util.ArrayList;
@@ -19,117 +21,202 @@ import java.util.List;
 public class ClassUtils {
 
     /**
-     * main 方法重写的方法体
+     * 清空类中所有方法体，按方法描述符直接生成返回默认值的字节码，不编译，也不需要加载依赖的类
+     * <p>
+     * 构造方法和静态初始化块不处理。方法体长度不变，返回指令之后用 nop 填充、最后一条为 athrow，
+     * 参数名(LocalVariableTable)和行号仍然有效；原来的异常表和栈帧删除，不可达的部分只需要一个栈帧。
+     *
+     * @param bytes class 文件内容
+     * @return 清空方法体后的 class
      */
-    static final String MAIN_REWRITE_BODY = "System.out.println(\"\\nStartup failed, invalid password.\\n\");";
-
-    static final String CLASS_FROZEN_MSG = "类已被冻结: \"%s\"";
-    static final String NO_BODY_MSG = "没有方法体1: \"%s\"";
-    static final String CANNOT_COMPILE_MSG = "构建方法失败: \"%s\"";
-    static final String NOT_FOUND_MSG = "找不到类: \"%s\"";
+    public static byte[] rewriteAllMethods(byte[] bytes) {
+        return rewriteAllMethods(bytes, false);
+    }
 
     /**
-     * 清空类中所有方法体
+     * 清空类中所有方法体，可选精简
+     * <p>
+     * 精简时方法体只保留返回指令，LocalVariableTable、LocalVariableTypeTable 只保留参数，删除行号表，
+     * 然后按剩余内容重建常量池。注解、泛型签名、参数名都保留，框架扫描和反射的结果不变。
+     * 有 javassist 不认识的属性时无法安全地重建常量池，这个类只清空方法体、不重建常量池。
      *
-     * @param pool      类字节码池
-     * @param classname 全类名
-     * @return 返回方法体的字节
+     * @param bytes   class 文件内容
+     * @param compact 是否精简
+     * @return 清空方法体后的 class
      */
-    public static byte[] rewriteAllMethods(ClassPool pool, String classname) {
+    public static byte[] rewriteAllMethods(byte[] bytes, boolean compact) {
         String name = null;
         try {
-            CtClass poolClass = pool.getCtClass(classname);
-            CtMethod[] methods = poolClass.getDeclaredMethods();
-
-            for (CtMethod method : methods) {
-                name = method.getName();
-                if (method.getLongName().startsWith(poolClass.getName())) {
-                    CodeAttribute ca = method.getMethodInfo().getCodeAttribute();
-                    if (ca == null || ca.getCodeLength() == 1 || ca.getCode()[0] == -79) {
-                        continue;
-                    }
-                    ClassUtils.setBodyKeepParamInfos(method, null, true);
-                    if (isMainMethod(method)) {
-                        method.insertBefore(MAIN_REWRITE_BODY);
-                    }
+            ClassFile cf = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytes)));
+            name = cf.getName();
+            for (MethodInfo method : cf.getMethods()) {
+                if (method.isConstructor() || method.isStaticInitializer()) {
+                    continue;
                 }
+                CodeAttribute ca = method.getCodeAttribute();
+                if (ca == null || ca.getCodeLength() == 1 || ca.getCode()[0] == (byte) Opcode.RETURN) {
+                    continue;
+                }
+                method.setCodeAttribute(compact ? compactCode(cf, method, ca) : stubCode(cf, method, ca));
+            }
+            if (compact && isCompactable(cf)) {
+                cf.compact();
             }
-            return poolClass.toBytecode();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+            cf.write(new DataOutputStream(out));
+            return out.toByteArray();
         } catch (Exception e) {
-            throw new RuntimeException("无法重写方法: " + classname + "(" + name + ")", e);
+            throw new RuntimeException("无法重写方法: " + name, e);
         }
     }
 
     /**
-     * 判断方法是否是 main 方法
+     * 生成返回默认值的方法体
      *
+     * @param cf     类
      * @param method 方法
-     * @return 若为main方法返回true，否则返回false
+     * @param ca     原方法体
+     * @return 新的方法体
      */
-    public static boolean isMainMethod(CtMethod method) {
-        try {
-            String returnType = method.getReturnType().getName();
-            return "void".equalsIgnoreCase(returnType) &&
-                    method.getLongName().endsWith(".main(java.lang.String[])") &&
-                    method.getMethodInfo().getAccessFlags() == (AccessFlag.PUBLIC & AccessFlag.STATIC);
-        } catch (NotFoundException e) {
-            return false;
+    private static CodeAttribute stubCode(ClassFile cf, MethodInfo method, CodeAttribute ca) {
+        ConstPool cp = cf.getConstPool();
+        String desc = method.getDescriptor();
+        char returnType = desc.charAt(desc.indexOf(')') + 1);
+        byte[] ret = defaultReturn(returnType);
+
+        int length = ca.getCodeLength();
+        //0 即 nop
+        byte[] code = new byte[length];
+        System.arraycopy(ret, 0, code, 0, ret.length);
+        if (length > ret.length) {
+            code[length - 1] = (byte) Opcode.ATHROW;
+        }
+        int maxStack = returnType == 'J' || returnType == 'D' ? 2 : 1;
+        CodeAttribute stub = new CodeAttribute(cp, maxStack, ca.getMaxLocals(), code, new ExceptionTable(cp));
+        for (AttributeInfo attribute : ca.getAttributes()) {
+            String attrName = attribute.getName();
+            if (LineNumberAttribute.tag.equals(attrName) || LocalVariableAttribute.tag.equals(attrName)
+                    || LocalVariableAttribute.typeTag.equals(attrName)) {
+                stub.getAttributes().add(attribute);
+            }
+        }
+        //不可达的部分：栈上为 Throwable，最后 athrow
+        if (length > ret.length && cf.getMajorVersion() >= ClassFile.JAVA_6) {
+            StackMapTable.Writer writer = new StackMapTable.Writer(8);
+            writer.sameLocals(ret.length, StackMapTable.OBJECT, cp.addClassInfo("java.lang.Throwable"));
+            stub.setAttribute(writer.toStackMapTable(cp));
         }
+        return stub;
     }
 
     /**
-     * 判断方法是否是构造方法
+     * 生成只有返回指令的方法体，参数的局部变量表范围改为整个方法体
      *
-     * @param methodName 方法名
-     * @return 若是构造方法返回true，否则返回false
+     * @param cf     类
+     * @param method 方法
+     * @param ca     原方法体
+     * @return 新的方法体
      */
-    public static boolean isConstructor(String methodName) {
-        return methodName.startsWith("<init>");
+    private static CodeAttribute compactCode(ClassFile cf, MethodInfo method, CodeAttribute ca) {
+        ConstPool cp = cf.getConstPool();
+        String desc = method.getDescriptor();
+        char returnType = desc.charAt(desc.indexOf(')') + 1);
+        byte[] code = defaultReturn(returnType);
+        int maxStack = returnType == 'J' || returnType == 'D' ? 2 : 1;
+        int params = Descriptor.paramSize(desc) + ((method.getAccessFlags() & AccessFlag.STATIC) != 0 ? 0 : 1);
+
+        CodeAttribute stub = new CodeAttribute(cp, maxStack, params, code, new ExceptionTable(cp));
+        for (AttributeInfo attribute : ca.getAttributes()) {
+            String attrName = attribute.getName();
+            if (LocalVariableAttribute.tag.equals(attrName) || LocalVariableAttribute.typeTag.equals(attrName)) {
+                LocalVariableAttribute table = (LocalVariableAttribute) attribute;
+                LocalVariableAttribute kept = LocalVariableAttribute.tag.equals(attrName)
+                        ? new LocalVariableAttribute(cp) : new LocalVariableTypeAttribute(cp);
+                for (int i = 0; i < table.tableLength(); i++) {
+                    //参数在方法开始时就存在，同一个位置只保留一次
+                    if (table.index(i) < params && table.startPc(i) == 0) {
+                        kept.addEntry(0, code.length, table.nameIndex(i), table.descriptorIndex(i), table.index(i));
+                    }
+                }
+                if (kept.tableLength() > 0) {
+                    stub.getAttributes().add(kept);
+                }
+            }
+        }
+        return stub;
     }
 
     /**
-     * 修改方法体，保留参数信息
+     * 是否可以重建常量池：所有属性都是 javassist 能解析并复制常量的类型
      *
-     * @param method  方法
-     * @param src     方法内容
-     * @param rebuild 重新构建
-     * @throws CannotCompileException 编译异常
+     * @param cf 类
+     * @return 可以返回 true
      */
-    public static void setBodyKeepParamInfos(CtMethod method, String src, boolean rebuild) throws CannotCompileException {
-        CtClass declaringClass = method.getDeclaringClass();
-        String longName = method.getLongName();
-        if (declaringClass.isFrozen()) {
-            throw new RuntimeException(String.format(CLASS_FROZEN_MSG, declaringClass.getName()));
+    private static boolean isCompactable(ClassFile cf) {
+        if (!isKnown(cf.getAttributes())) {
+            return false;
         }
-        CodeAttribute attribute = method.getMethodInfo().getCodeAttribute();
-        if (attribute == null) {
-            throw new CannotCompileException(String.format(NO_BODY_MSG, longName));
-        } else {
-            CodeIterator iterator = attribute.iterator();
-            Javac jc = new Javac(declaringClass);
-            try {
-                int nvars = jc.recordParams(method.getParameterTypes(), Modifier.isStatic(method.getModifiers()));
-                jc.recordParamNames(attribute, nvars);
-                jc.recordLocalVariables(attribute, 0);
-                jc.recordReturnType(Descriptor.getReturnType(method.getMethodInfo().getDescriptor(), declaringClass.getClassPool()), false);
-                Bytecode b = jc.compileBody(method, src);
-                int stack = b.getMaxStack();
-                int locals = b.getMaxLocals();
-                if (stack > attribute.getMaxStack()) {
-                    attribute.setMaxStack(stack);
-                }
-                if (locals > attribute.getMaxLocals()) {
-                    attribute.setMaxLocals(locals);
-                }
-                int pos = iterator.insertEx(b.get());
-                iterator.insert(b.getExceptionTable(), pos);
-                if (rebuild) {
-                    method.getMethodInfo().rebuildStackMapIf6(declaringClass.getClassPool(), declaringClass.getClassFile2());
-                }
-            } catch (Exception e) {
-                throw new CannotCompileException(String.format(CANNOT_COMPILE_MSG, longName), e);
+        for (FieldInfo field : cf.getFields()) {
+            if (!isKnown(field.getAttributes())) {
+                return false;
+            }
+        }
+        for (MethodInfo method : cf.getMethods()) {
+            if (!isKnown(method.getAttributes())) {
+                return false;
+            }
+            CodeAttribute ca = method.getCodeAttribute();
+            if (ca != null && !isKnown(ca.getAttributes())) {
+                return false;
             }
         }
+        return true;
+    }
+
+    private static boolean isKnown(List<AttributeInfo> attributes) {
+        for (AttributeInfo attribute : attributes) {
+            if (attribute.getClass() == AttributeInfo.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 返回默认值的指令
+     *
+     * @param returnType 返回类型描述符的第一个字符
+     * @return 指令
+     */
+    private static byte[] defaultReturn(char returnType) {
+        switch (returnType) {
+            case 'V':
+                return new byte[]{(byte) Opcode.RETURN};
+            case 'Z':
+            case 'B':
+            case 'C':
+            case 'S':
+            case 'I':
+                return new byte[]{Opcode.ICONST_0, (byte) Opcode.IRETURN};
+            case 'J':
+                return new byte[]{Opcode.LCONST_0, (byte) Opcode.LRETURN};
+            case 'F':
+                return new byte[]{Opcode.FCONST_0, (byte) Opcode.FRETURN};
+            case 'D':
+                return new byte[]{Opcode.DCONST_0, (byte) Opcode.DRETURN};
+            default:
+                return new byte[]{Opcode.ACONST_NULL, (byte) Opcode.ARETURN};
+        }
+    }
+
+    /**
+     * 判断方法是否是构造方法
+     *
+     * @param methodName 方法名
+     * @return 若是构造方法返回true，否则返回false
+     */
+    public static boolean isConstructor(String methodName) {
+        return methodName.startsWith("<init>");
     }
 
     /**
@@ -203,6 +290,22 @@ public class ClassUtils {
      * @throws Exception Exception
      */
     public static byte[] insertCode(String classMethod, String javaCode, int line, File libPath) throws Exception {
+        ClassPool pool = ClassPool.getDefault();
+        loadClassPath(pool, libPath);
+        return insertCode(pool, classMethod, javaCode, line);
+    }
+
+    /**
+     * 给指定方法插入代码并返回类的字节数组，从指定的类字节码池中查找类
+     *
+     * @param pool        类字节码池
+     * @param classMethod 方法名
+     * @param javaCode    代码
+     * @param line        行数
+     * @return 字节数组
+     * @throws Exception Exception
+     */
+    public static byte[] insertCode(ClassPool pool, String classMethod, String javaCode, int line) throws Exception {
         // classname#methodname
         String[] cmp = classMethod.split("#");
         if (cmp.length != 2) {
@@ -210,8 +313,6 @@ public class ClassUtils {
         }
         String className = cmp[0];
         String methodName = cmp[1];
-        ClassPool pool = ClassPool.getDefault();
-        loadClassPath(pool, libPath);
         CtClass poolClass = pool.getCtClass(className);
         if (isConstructor(methodName)) {
             //eg (Ljava/lang/String)
@@ -43,7 +43,7 @@ public class CmdLineOption {
     public CmdLineOption parse(String[] args) {
         List<String> values;
         for (String argument : args) {
-            String[] kvp = argument.split("=");
+            String[] kvp = argument.split("=", 2);
             if (kvp.length != 2) {
                 continue;
             }
@@ -0,0 +1,262 @@
+package com.hz.classfinal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 带预置字典的压缩，加密前压缩，解密后解压
+ * <p>
+ * 加密后的内容是随机字节，打包时的 deflate 不起作用；加密前用 deflate 压缩每个文件，
+ * 单个 class 太小、压缩率低，所以用从所有 class 的常量池中提取的公共字符串作为预置字典。
+ * 压缩后的格式：
+ * <pre>
+ * byte[4] magic
+ * int     原始长度
+ * byte[]  raw deflate 数据，末尾多一个字节供 Inflater 使用
+ * </pre>
+ * 压缩后没有变小的文件原样保存，不加 magic；但原始内容本身以 magic 开头时总是保存压缩后的格式，
+ * 否则解压时会把它当成压缩数据。
+ *
+ * @author roseboy
+ */
+public class DictCompressor {
+
+    //压缩数据的标记
+    static final byte[] MAGIC = {(byte) 0xCF, 'Z', 0x01, 0x00};
+    //文件头长度
+    static final int HEADER_LENGTH = MAGIC.length + 4;
+    //字典最大长度，deflate 的窗口大小
+    public static final int MAX_DICT_SIZE = 32 * 1024;
+    //每个线程一个 Inflater
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * 从 class 文件中训练字典
+     * <p>
+     * 统计每个常量池 UTF8 常量（包含 tag 和长度，与 class 中的字节一致）出现在多少个 class 中，
+     * 按 (出现次数-1)*长度 排序取到字典满，出现最多的放在字典末尾，离压缩数据最近
+     *
+     * @param classes class 文件内容
+     * @return 字典，没有可用的公共字符串时返回空数组
+     */
+    public static byte[] train(List<byte[]> classes) {
+        Map<String, int[]> counts = new HashMap<>();
+        for (byte[] bytes : classes) {
+            for (String constant : utf8Constants(bytes)) {
+                counts.computeIfAbsent(constant, k -> new int[1])[0]++;
+            }
+        }
+        List<Map.Entry<String, int[]>> entries = new ArrayList<>();
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            if (entry.getValue()[0] > 1) {
+                entries.add(entry);
+            }
+        }
+        entries.sort((a, b) -> {
+            long sa = (long) (a.getValue()[0] - 1) * a.getKey().length();
+            long sb = (long) (b.getValue()[0] - 1) * b.getKey().length();
+            return sa != sb ? Long.compare(sb, sa) : a.getKey().compareTo(b.getKey());
+        });
+
+        List<String> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, int[]> entry : entries) {
+            int length = entry.getKey().length();
+            if (size + length <= MAX_DICT_SIZE) {
+                selected.add(entry.getKey());
+                size += length;
+            }
+        }
+        ByteArrayOutputStream dict = new ByteArrayOutputStream(size);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            byte[] bytes = selected.get(i).getBytes(StandardCharsets.ISO_8859_1);
+            dict.write(bytes, 0, bytes.length);
+        }
+        return dict.toByteArray();
+    }
+
+    /**
+     * 压缩
+     *
+     * @param bytes 原始内容
+     * @param dict  字典
+     * @return 压缩后的内容，没有变小且不以 magic 开头时返回原始内容
+     */
+    public static byte[] compress(byte[] bytes, byte[] dict) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            if (dict.length > 0) {
+                deflater.setDictionary(dict);
+            }
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + HEADER_LENGTH);
+            out.write(MAGIC, 0, MAGIC.length);
+            out.write(bytes.length >>> 24);
+            out.write(bytes.length >>> 16);
+            out.write(bytes.length >>> 8);
+            out.write(bytes.length);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            out.write(0);
+            return out.size() < bytes.length || isCompressed(bytes) ? out.toByteArray() : bytes;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 是否是压缩后的内容
+     *
+     * @param bytes 内容
+     * @return 是返回 true
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解压
+     *
+     * @param bytes 压缩后的内容
+     * @param dict  字典
+     * @return 原始内容
+     * @throws IOException 数据格式错误
+     */
+    public static byte[] inflate(byte[] bytes, byte[] dict) throws IOException {
+        int length = ((bytes[4] & 0xFF) << 24) | ((bytes[5] & 0xFF) << 16) | ((bytes[6] & 0xFF) << 8) | (bytes[7] & 0xFF);
+        byte[] result = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        try {
+            if (dict.length > 0) {
+                inflater.setDictionary(dict);
+            }
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            int off = 0;
+            while (off < length) {
+                int n = inflater.inflate(result, off, length - off);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                off += n;
+            }
+            if (off != length) {
+                throw new IOException("解压失败: 长度不一致");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("解压失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 边读边解压的输入流，内容没有压缩时原样返回
+     *
+     * @param in   输入流
+     * @param dict 字典
+     * @return 输入流
+     * @throws IOException IO异常
+     */
+    public static InputStream inflate(InputStream in, byte[] dict) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, HEADER_LENGTH);
+        byte[] header = new byte[HEADER_LENGTH];
+        int n = 0;
+        while (n < HEADER_LENGTH) {
+            int read = pushback.read(header, n, HEADER_LENGTH - n);
+            if (read < 0) {
+                break;
+            }
+            n += read;
+        }
+        if (n < HEADER_LENGTH || !isCompressed(header)) {
+            pushback.unread(header, 0, n);
+            return pushback;
+        }
+        Inflater inflater = new Inflater(true);
+        if (dict.length > 0) {
+            inflater.setDictionary(dict);
+        }
+        return new InflaterInputStream(pushback, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * 读取 class 常量池中的 UTF8 常量，包含 tag 和长度
+     *
+     * @param bytes class 文件内容
+     * @return 常量，不是 class 文件或格式无法识别时返回已读取的部分
+     */
+    static List<String> utf8Constants(byte[] bytes) {
+        List<String> constants = new ArrayList<>();
+        if (bytes.length < 10 || (bytes[0] & 0xFF) != 0xCA || (bytes[1] & 0xFF) != 0xFE) {
+            return constants;
+        }
+        int count = ((bytes[8] & 0xFF) << 8) | (bytes[9] & 0xFF);
+        int pos = 10;
+        for (int i = 1; i < count && pos < bytes.length; i++) {
+            int tag = bytes[pos] & 0xFF;
+            int size;
+            switch (tag) {
+                case 1:
+                    if (pos + 3 > bytes.length) {
+                        return constants;
+                    }
+                    size = 3 + (((bytes[pos + 1] & 0xFF) << 8) | (bytes[pos + 2] & 0xFF));
+                    if (pos + size > bytes.length) {
+                        return constants;
+                    }
+                    constants.add(new String(bytes, pos, size, StandardCharsets.ISO_8859_1));
+                    break;
+                case 7: case 8: case 16: case 19: case 20:
+                    size = 3;
+                    break;
+                case 15:
+                    size = 4;
+                    break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                    size = 5;
+                    break;
+                case 5: case 6:
+                    //long 和 double 占两个位置
+                    size = 9;
+                    i++;
+                    break;
+                default:
+                    return constants;
+            }
+            pos += size;
+        }
+        return constants;
+    }
+}
@@ -3,5 +3,11 @@ package com.hz.classfinal.util;
 public enum EncryptType {
     MD5,
     AES,
-    RSA;
+    RSA,
+    /**
+     * AES/GCM，带认证，密钥由密码和机器码派生一次，每个文件单独的 IV
+     *
+     * @see AesGcm
+     */
+    AES_GCM;
 }
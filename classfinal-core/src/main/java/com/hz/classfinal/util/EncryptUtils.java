@@ -2,6 +2,7 @@ package com.hz.classfinal.util;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
@@ -24,6 +25,8 @@ public class EncryptUtils {
     static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
     //rsa 长度
     static final int KEY_LENGTH = 1024;
+    //信封加密包装内容密钥的方式
+    static final String RSA_WRAP = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
     //基础字符数组
     static final Character[] chars = new Character[]{
             '0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
@@ -34,6 +37,46 @@ public class EncryptUtils {
             '!', '@', '#', '$', '%', '^', '&', '*', '(', ')', '-', '=', '_', '+', '.'};
 
 
+    //MD5异或的密钥流长度，32字节密钥重复16次
+    static final int KEY_STREAM_LENGTH = 512;
+    //MD5异或的密钥长度
+    static final int XOR_KEY_LENGTH = 32;
+    //MD5异或使用的线程缓存
+    private static final ThreadLocal<XorKeyStream> XOR_KEY_STREAM = ThreadLocal.withInitial(XorKeyStream::new);
+    private static final char[] EMPTY_CHARS = new char[0];
+
+    /**
+     * 加密，密钥由两部分拼接而成
+     *
+     * @param msg  内容
+     * @param key1 密钥前半部分
+     * @param key2 密钥后半部分
+     * @param type 类型
+     * @return 密文
+     */
+    public static byte[] encryption(byte[] msg, char[] key1, char[] key2, EncryptType type) throws GeneralSecurityException {
+        if (type == EncryptType.MD5) {
+            return xorMd5byte(msg, key1, key2);
+        }
+        return encryption(msg, StrUtils.merger(key1, key2), type);
+    }
+
+    /**
+     * 解密，密钥由两部分拼接而成
+     *
+     * @param msg  密文
+     * @param key1 密钥前半部分
+     * @param key2 密钥后半部分
+     * @param type 类型
+     * @return 明文
+     */
+    public static byte[] decryption(byte[] msg, char[] key1, char[] key2, EncryptType type) throws GeneralSecurityException {
+        if (type == EncryptType.MD5) {
+            return xorMd5byte(msg, key1, key2);
+        }
+        return decryption(msg, StrUtils.merger(key1, key2), type);
+    }
+
     /**
      * 加密
      *
@@ -45,7 +88,7 @@ public class EncryptUtils {
     public static byte[] encryption(byte[] msg, char[] key, EncryptType type) throws GeneralSecurityException {
         switch (type) {
             case MD5:
-                return xorMd5byte(msg, 0, msg.length, key);
+                return xorMd5byte(msg, key, EMPTY_CHARS);
             case AES:
                 return enAES(msg, md5(StrUtils.merger(key, SALT), true));
             case RSA:
@@ -66,7 +109,7 @@ public class EncryptUtils {
     public static byte[] decryption(byte[] msg, char[] key, EncryptType type) throws GeneralSecurityException {
         switch (type) {
             case MD5:
-                return xorMd5byte(msg, 0, msg.length, key);
+                return xorMd5byte(msg, key, EMPTY_CHARS);
             case AES:
                 return deAES(msg, md5(StrUtils.merger(key, SALT), true));
             case RSA:
@@ -126,20 +169,34 @@ public class EncryptUtils {
     }
 
     /**
-     * 将加密内容与密钥 MD5 编码后进行异或操作
+     * MD5异或的密钥，用于流式解密，第 i 个字节与 {@code key[i % 32]} 异或
      *
-     * @param msg   加密内容
-     * @param start 起始位置
-     * @param end   结束位置
-     * @param key   密钥
+     * @param key1 密钥前半部分
+     * @param key2 密钥后半部分
+     * @return 32字节的密钥
+     */
+    public static byte[] xorKey(char[] key1, char[] key2) {
+        return Arrays.copyOf(XOR_KEY_STREAM.get().derive(key1, key2), XOR_KEY_LENGTH);
+    }
+
+    /**
+     * 将加密内容与密钥 MD5 编码后进行异或操作，直接修改传入的数组
+     * <p>
+     * 密钥为 {@code md5(key1+key2+SALT) + md5(SALT+key1+key2)}，摘要、编码缓冲和密钥流都缓存在线程中，不产生垃圾对象
+     *
+     * @param msg  加密内容
+     * @param key1 密钥前半部分
+     * @param key2 密钥后半部分
      * @return 密文
      */
-    private static byte[] xorMd5byte(byte[] msg, int start, int end, char[] key) {
-        byte[] bs1 = md5byte(StrUtils.merger(key, SALT));
-        byte[] bs2 = md5byte(StrUtils.merger(SALT, key));
-        byte[] keys = IoUtils.merger(bs1, bs2);
-        for (int i = start; i < end; i++) {
-            msg[i] = (byte) (msg[i] ^ keys[i % keys.length]);
+    private static byte[] xorMd5byte(byte[] msg, char[] key1, char[] key2) {
+        byte[] stream = XOR_KEY_STREAM.get().derive(key1, key2);
+        int length = msg.length;
+        for (int base = 0; base < length; base += KEY_STREAM_LENGTH) {
+            int n = Math.min(KEY_STREAM_LENGTH, length - base);
+            for (int i = 0; i < n; i++) {
+                msg[base + i] ^= stream[i];
+            }
         }
         return msg;
     }
@@ -169,7 +226,7 @@ public class EncryptUtils {
                 .generatePublic(new X509EncodedKeySpec(decoded));
         Cipher cipher = Cipher.getInstance("RSA");
         cipher.init(Cipher.ENCRYPT_MODE, pubKey);
-        return cipherDoFinal(cipher, msg, Cipher.ENCRYPT_MODE);
+        return cipherDoFinal(cipher, msg, pubKey.getModulus().bitLength() / 8 - 11);
     }
 
     /**
@@ -196,38 +253,54 @@ public class EncryptUtils {
                 .generatePrivate(new PKCS8EncodedKeySpec(decoded));
         Cipher cipher = Cipher.getInstance("RSA");
         cipher.init(Cipher.DECRYPT_MODE, priKey);
-        return cipherDoFinal(cipher, msg, Cipher.DECRYPT_MODE);
+        return cipherDoFinal(cipher, msg, priKey.getModulus().bitLength() / 8);
     }
 
     /**
-     * 调用加密解密
+     * 分块调用加密解密，结果写入同一个缓冲区
      *
-     * @param cipher Cipher
-     * @param msg    要加密的字节
-     * @param mode   解密/解密
+     * @param cipher    Cipher
+     * @param msg       要加密的字节
+     * @param blockSize 每块的长度，加密时为密钥字节数-11，解密时为密钥字节数
      * @return 结果
      */
-    private static byte[] cipherDoFinal(Cipher cipher, byte[] msg, int mode) throws GeneralSecurityException {
-        int length = 0;
-        if (mode == Cipher.ENCRYPT_MODE) {
-            length = KEY_LENGTH / 8 - 11;
-        } else if (mode == Cipher.DECRYPT_MODE) {
-            length = KEY_LENGTH / 8;
+    private static byte[] cipherDoFinal(Cipher cipher, byte[] msg, int blockSize) throws GeneralSecurityException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(msg.length + msg.length / 8 + blockSize);
+        for (int offset = 0; offset < msg.length; offset += blockSize) {
+            byte[] block = cipher.doFinal(msg, offset, Math.min(blockSize, msg.length - offset));
+            out.write(block, 0, block.length);
         }
+        return out.toByteArray();
+    }
 
-        byte[] in = new byte[length];
-        byte[] out = new byte[0];
+    /**
+     * RSA 公钥包装内容密钥，用于信封加密，只需一次 RSA 运算
+     *
+     * @param key       内容密钥
+     * @param publicKey base64编码的公钥
+     * @return 包装后的密钥
+     */
+    public static byte[] wrapKey(byte[] key, char[] publicKey) throws GeneralSecurityException {
+        byte[] decoded = Base64.getDecoder().decode(StrUtils.toBytes(publicKey));
+        PublicKey pubKey = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(decoded));
+        Cipher cipher = Cipher.getInstance(RSA_WRAP);
+        cipher.init(Cipher.ENCRYPT_MODE, pubKey);
+        return cipher.doFinal(key);
+    }
 
-        for (int i = 0; i < msg.length; i++) {
-            if (msg.length - i < length && i % length == 0) {
-                in = new byte[msg.length - i];
-            }
-            in[i % length] = msg[i];
-            if (i == (msg.length - 1) || (i % length + 1 == length)) {
-                out = IoUtils.merger(out, cipher.doFinal(in));
-            }
-        }
-        return out;
+    /**
+     * RSA 私钥解开内容密钥
+     *
+     * @param wrapped    包装后的密钥
+     * @param privateKey base64编码的私钥
+     * @return 内容密钥
+     */
+    public static byte[] unwrapKey(byte[] wrapped, char[] privateKey) throws GeneralSecurityException {
+        byte[] decoded = Base64.getDecoder().decode(StrUtils.toBytes(privateKey));
+        PrivateKey priKey = KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(decoded));
+        Cipher cipher = Cipher.getInstance(RSA_WRAP);
+        cipher.init(Cipher.DECRYPT_MODE, priKey);
+        return cipher.doFinal(wrapped);
     }
 
     /**
@@ -237,8 +310,19 @@ public class EncryptUtils {
      * @throws NoSuchAlgorithmException NoSuchAlgorithmException
      */
     public static Map<Integer, String> genRSAKeyPair() throws NoSuchAlgorithmException {
+        return genRSAKeyPair(KEY_LENGTH);
+    }
+
+    /**
+     * 生成指定长度的 RSA 密钥对
+     *
+     * @param keyLength 密钥长度(位)
+     * @return 密钥信息
+     * @throws NoSuchAlgorithmException NoSuchAlgorithmException
+     */
+    public static Map<Integer, String> genRSAKeyPair(int keyLength) throws NoSuchAlgorithmException {
         KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
-        keyPairGen.initialize(KEY_LENGTH, new SecureRandom());
+        keyPairGen.initialize(keyLength, new SecureRandom());
         KeyPair keyPair = keyPairGen.generateKeyPair();
         RSAPrivateKey privateKey = (RSAPrivateKey) keyPair.getPrivate();   // 得到私钥
         RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();  // 得到公钥
@@ -285,6 +369,108 @@ public class EncryptUtils {
     }
 
 
+    /**
+     * MD5异或的密钥派生，每个线程一份
+     */
+    static class XorKeyStream {
+        private final MessageDigest md;
+        private final byte[] stream = new byte[KEY_STREAM_LENGTH];
+        private char[] chars = new char[128];
+        private byte[] bytes = new byte[384];
+
+        XorKeyStream() {
+            try {
+                this.md = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * 计算密钥流
+         *
+         * @param key1 密钥前半部分
+         * @param key2 密钥后半部分
+         * @return 密钥流，线程内复用，下次调用前有效
+         */
+        byte[] derive(char[] key1, char[] key2) {
+            digest(key1, key2, SALT, 0);
+            digest(SALT, key1, key2, 16);
+            for (int i = XOR_KEY_LENGTH; i < KEY_STREAM_LENGTH; i += XOR_KEY_LENGTH) {
+                System.arraycopy(stream, 0, stream, i, XOR_KEY_LENGTH);
+            }
+            return stream;
+        }
+
+        /**
+         * 计算三段字符拼接后 UTF-8 编码的 md5，写入密钥流指定位置
+         */
+        private void digest(char[] c1, char[] c2, char[] c3, int offset) {
+            int length = c1.length + c2.length + c3.length;
+            if (chars.length < length) {
+                chars = new char[length];
+                bytes = new byte[length * 3];
+            }
+            System.arraycopy(c1, 0, chars, 0, c1.length);
+            System.arraycopy(c2, 0, chars, c1.length, c2.length);
+            System.arraycopy(c3, 0, chars, c1.length + c2.length, c3.length);
+            md.update(bytes, 0, encodeUtf8(chars, length, bytes));
+            try {
+                md.digest(stream, offset, 16);
+            } catch (DigestException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * UTF-8 编码，不成对的代理字符替换为 '?'，与 {@link StrUtils#toBytes(char[])} 结果一致
+         *
+         * @return 编码后的长度
+         */
+        private static int encodeUtf8(char[] chars, int length, byte[] out) {
+            int n = 0;
+            for (int i = 0; i < length; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    out[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[n++] = (byte) (0xC0 | (c >> 6));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                    int cp = Character.toCodePoint(c, chars[++i]);
+                    out[n++] = (byte) (0xF0 | (cp >> 18));
+                    out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    out[n++] = '?';
+                } else {
+                    out[n++] = (byte) (0xE0 | (c >> 12));
+                    out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 安全随机数生成的密钥，十六进制字符
+     *
+     * @param length 随机字节数，结果长度为两倍
+     * @return 字符数组
+     */
+    public static char[] secureRandomKey(int length) {
+        byte[] bytes = new byte[length];
+        new SecureRandom().nextBytes(bytes);
+        char[] result = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            result[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            result[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return result;
+    }
+
     /**
      * 随机字串串
      *
@@ -0,0 +1,31 @@
+package com.hz.classfinal.util;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * 加密 jar 中每个文件的加密解密器，由 {@link CipherProvider} 创建，需要线程安全
+ *
+ * @author roseboy
+ */
+public interface EntryCipher {
+
+    /**
+     * 加密
+     *
+     * @param msg  内容，实现可以直接修改
+     * @param name 文件名
+     * @return 密文
+     * @throws GeneralSecurityException 加密异常
+     */
+    byte[] encrypt(byte[] msg, String name) throws GeneralSecurityException;
+
+    /**
+     * 解密
+     *
+     * @param msg  密文，实现可以直接修改
+     * @param name 文件名
+     * @return 明文
+     * @throws GeneralSecurityException 解密异常
+     */
+    byte[] decrypt(byte[] msg, String name) throws GeneralSecurityException;
+}
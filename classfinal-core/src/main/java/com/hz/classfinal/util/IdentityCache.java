@@ -0,0 +1,98 @@
+package com.hz.classfinal.util;
+
+/**
+ * 按对象引用（==）匹配的并发缓存
+ * <p>
+ * 读多写少的场景使用：查找不加锁、不分配对象；写入时复制整张表，超过容量后清空重建。
+ *
+ * @param <K> 键
+ * @param <V> 值
+ * @author roseboy
+ */
+public class IdentityCache<K, V> {
+
+    //最大容量
+    private final int capacity;
+    //当前的表，写入时整体替换
+    private volatile Table table;
+
+    /**
+     * 构造方法
+     *
+     * @param capacity 最大容量
+     */
+    public IdentityCache(int capacity) {
+        this.capacity = capacity;
+        this.table = new Table(capacity);
+    }
+
+    /**
+     * 获取缓存
+     *
+     * @param key 键
+     * @return 值，没有缓存返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Table t = this.table;
+        Object[] keys = t.keys;
+        int mask = keys.length - 1;
+        for (int i = System.identityHashCode(key) & mask; ; i = (i + 1) & mask) {
+            Object k = keys[i];
+            if (k == key) {
+                return (V) t.values[i];
+            }
+            if (k == null) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public synchronized void put(K key, V value) {
+        Table old = this.table;
+        Table t = new Table(capacity);
+        if (old.size < capacity) {
+            for (int i = 0; i < old.keys.length; i++) {
+                if (old.keys[i] != null) {
+                    t.insert(old.keys[i], old.values[i]);
+                }
+            }
+        }
+        t.insert(key, value);
+        this.table = t;
+    }
+
+    /**
+     * 开放寻址的表，长度是容量的2倍以上，始终有空位
+     */
+    static class Table {
+        final Object[] keys;
+        final Object[] values;
+        int size;
+
+        Table(int capacity) {
+            int length = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1;
+            this.keys = new Object[length];
+            this.values = new Object[length];
+        }
+
+        void insert(Object key, Object value) {
+            int mask = keys.length - 1;
+            int i = System.identityHashCode(key) & mask;
+            while (keys[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == null) {
+                size++;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+    }
+}
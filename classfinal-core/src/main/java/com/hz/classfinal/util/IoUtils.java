@@ -64,6 +64,19 @@ public class IoUtils {
         }
     }
 
+    /**
+     * 读取流中剩余的字节，不关闭流，用于逐个读取 ZipInputStream 中的文件
+     *
+     * @param input 输入流
+     * @return 字节数组
+     * @throws IOException IOException
+     */
+    public static byte[] readRemaining(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        copy(input, output);
+        return output.toByteArray();
+    }
+
     /**
      * 文件是否存在
      *
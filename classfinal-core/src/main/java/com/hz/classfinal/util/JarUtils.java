@@ -4,8 +4,13 @@ import com.hz.classfinal.Constants;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -43,7 +48,6 @@ public class JarUtils extends Constants {
             //noinspection ResultOfMethodCallIgnored
             outFile.delete();
         }
-        ZipEntry ze;
         try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(outFile.toPath()))) {
             for (File file : allFiles) {
                 if (isStyleFile(file)) {
@@ -53,30 +57,9 @@ public class JarUtils extends Constants {
                 entryName = entryName.replace(File.separator, "/");
                 //目录，添加一个目录entry
                 if (file.isDirectory()) {
-                    ze = new ZipEntry(entryName + "/");
-                    ze.setTime(System.currentTimeMillis());
-                    zos.putNextEntry(ze);
-                    zos.closeEntry();
-                }
-                //jar文件，需要写crc信息
-                else if (entryName.endsWith(Constants.JAR_EXT)) {
-                    byte[] bytes = IoUtils.readBytes(file);
-                    ze = new ZipEntry(entryName);
-                    ze.setMethod(ZipEntry.STORED);
-                    ze.setSize(bytes.length);
-                    ze.setTime(System.currentTimeMillis());
-                    ze.setCrc(IoUtils.crc32(bytes));
-                    zos.putNextEntry(ze);
-                    zos.write(bytes);
-                    zos.closeEntry();
-                }
-                //其他文件直接写入
-                else {
-                    ze = new ZipEntry(entryName);
-                    ze.setTime(System.currentTimeMillis());
-                    zos.putNextEntry(ze);
-                    zos.write(IoUtils.readBytes(file));
-                    zos.closeEntry();
+                    writeEntry(zos, entryName + "/", null, System.currentTimeMillis());
+                } else {
+                    writeEntry(zos, entryName, IoUtils.readBytes(file), System.currentTimeMillis());
                 }
             }
             return output;
@@ -84,6 +67,31 @@ public class JarUtils extends Constants {
     }
 
 
+    /**
+     * 写入一个文件，jar文件和加密文件合并包不压缩
+     *
+     * @param zos       压缩输出流
+     * @param entryName 文件名，目录以 / 结尾
+     * @param bytes     内容，目录为 null
+     * @param time      修改时间
+     * @throws IOException IO异常
+     */
+    public static void writeEntry(ZipOutputStream zos, String entryName, byte[] bytes, long time) throws IOException {
+        ZipEntry ze = new ZipEntry(entryName);
+        ze.setTime(time);
+        //jar文件和加密文件合并包不压缩，需要写crc信息
+        if (bytes != null && (entryName.endsWith(Constants.JAR_EXT) || entryName.endsWith(Constants.CONFIG_PACK))) {
+            ze.setMethod(ZipEntry.STORED);
+            ze.setSize(bytes.length);
+            ze.setCrc(IoUtils.crc32(bytes));
+        }
+        zos.putNextEntry(ze);
+        if (bytes != null) {
+            zos.write(bytes);
+        }
+        zos.closeEntry();
+    }
+
     /**
      * 释放压缩文件内的所有内容
      *
@@ -186,14 +194,138 @@ public class JarUtils extends Constants {
 
     }
 
+    /**
+     * 查找压缩文件中不压缩存储（STORED）的文件，返回文件数据在压缩文件中的位置，用于直接映射
+     *
+     * @param zip      压缩文件
+     * @param fileName 内部文件名
+     * @return {偏移, 长度}，找不到、文件被压缩或是 zip64 格式时返回 null
+     * @throws IOException IO异常
+     */
+    public static long[] findStoredEntry(File zip, String fileName) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(zip, "r")) {
+            //[1]从文件末尾找中央目录
+            ByteBuffer cd = readCentralDirectory(raf);
+            if (cd == null) {
+                return null;
+            }
+            long cdSize = cd.capacity();
+
+            //[2]遍历中央目录 0x02014b50
+            byte[] target = fileName.getBytes(StandardCharsets.UTF_8);
+            int pos = 0;
+            while (pos + 46 <= cdSize && cd.getInt(pos) == 0x02014b50) {
+                int method = cd.getShort(pos + 10) & 0xFFFF;
+                long size = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+                int nameLen = cd.getShort(pos + 28) & 0xFFFF;
+                int extraLen = cd.getShort(pos + 30) & 0xFFFF;
+                int commentLen = cd.getShort(pos + 32) & 0xFFFF;
+                long localOffset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+                if (nameLen == target.length && regionEquals(cd, pos + 46, target)) {
+                    if (method != ZipEntry.STORED || size == 0xFFFFFFFFL || localOffset == 0xFFFFFFFFL) {
+                        return null;
+                    }
+                    //[3]跳过本地文件头 0x04034b50
+                    ByteBuffer local = readRegion(raf, localOffset, 30);
+                    if (local.getInt(0) != 0x04034b50) {
+                        return null;
+                    }
+                    long dataOffset = localOffset + 30 + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+                    return new long[]{dataOffset, size};
+                }
+                pos += 46 + nameLen + extraLen + commentLen;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 压缩文件的指纹，对文件长度和中央目录做 SHA-256
+     * <p>
+     * 中央目录包含每个文件的名称、大小和 CRC，任何文件内容变化都会改变指纹，只需读取文件末尾
+     *
+     * @param zip 压缩文件
+     * @return 32字节的指纹，不是 zip 格式或是 zip64 格式时返回 null
+     * @throws IOException IO异常
+     */
+    public static byte[] fingerprint(File zip) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(zip, "r")) {
+            ByteBuffer cd = readCentralDirectory(raf);
+            if (cd == null) {
+                return null;
+            }
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(ByteBuffer.allocate(8).putLong(raf.length()).array());
+            md.update(cd);
+            return md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 从文件末尾找中央目录结束标记 0x06054b50，读取中央目录
+     *
+     * @return 中央目录，找不到或是 zip64 格式时返回 null
+     */
+    private static ByteBuffer readCentralDirectory(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        int tailSize = (int) Math.min(length, 0xFFFF + 22);
+        ByteBuffer tail = readRegion(raf, length - tailSize, tailSize);
+        int eocd = -1;
+        for (int i = tailSize - 22; i >= 0; i--) {
+            if (tail.getInt(i) == 0x06054b50) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            return null;
+        }
+        long cdSize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long cdOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL || cdOffset + cdSize > length) {
+            return null;
+        }
+        return readRegion(raf, cdOffset, (int) cdSize);
+    }
+
+    /**
+     * 读取文件的一段区域，小端字节序
+     */
+    private static ByteBuffer readRegion(RandomAccessFile raf, long offset, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        raf.seek(offset);
+        raf.readFully(bytes);
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static boolean regionEquals(ByteBuffer buffer, int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * 是否是系统样式文件，例如windows系统的 Thumbs.db 文件，macos 系统的 .DS_Store 文件
      *
      * @param file 文件
      */
     public static boolean isStyleFile(File file) {
+        return isStyleFile(file.getAbsolutePath());
+    }
+
+    /**
+     * 是否是系统样式文件
+     *
+     * @param path 文件路径或压缩文件内的文件名
+     */
+    public static boolean isStyleFile(String path) {
         for (String name : STYLE_FILES) {
-            if (file.getAbsolutePath().endsWith(name)) {
+            if (path.endsWith(name)) {
                 return true;
             }
         }
@@ -0,0 +1,172 @@
+package com.hz.classfinal.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解密后的资源缓存
+ * <p>
+ * 按路径缓存解密后的内容，总大小超出上限时淘汰最久未使用的；单个资源超过上限的 1/4 时不缓存。
+ * 资源在第一次被完整读取时写入缓存，之后同一路径直接从内存返回，不再读取 jar 和解密。
+ *
+ * @author roseboy
+ */
+public class ResourceCache {
+
+    //默认缓存上限(字节)
+    public static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024L;
+
+    //路径 -> 解密后的内容，按访问顺序排列
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //缓存上限，小于等于0时不缓存
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    //已缓存的字节数
+    private long usedBytes = 0;
+
+    /**
+     * 设置缓存上限，超出的部分立即淘汰
+     *
+     * @param maxBytes 字节数，小于等于0时不缓存
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict(0);
+    }
+
+    /**
+     * 启动后指定时间清空并停用缓存，缓存只在启动阶段生效
+     *
+     * @param millis 毫秒
+     */
+    public void expireAfter(long millis) {
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            setMaxBytes(0);
+            ConsoleLog.debug("配置文件缓存已过期");
+        }, "classfinal-resource-cache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 获取缓存的内容
+     *
+     * @param path 资源路径
+     * @return 输入流，没有缓存返回 null
+     */
+    public synchronized InputStream get(String path) {
+        byte[] bytes = entries.get(path);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param path  资源路径
+     * @param bytes 解密后的内容，写入后不可再修改
+     */
+    public synchronized void put(String path, byte[] bytes) {
+        if (maxBytes <= 0 || bytes.length > maxBytes / 4) {
+            return;
+        }
+        byte[] old = entries.remove(path);
+        if (old != null) {
+            usedBytes -= old.length;
+        }
+        evict(bytes.length);
+        entries.put(path, bytes);
+        usedBytes += bytes.length;
+    }
+
+    /**
+     * 包装输入流，读到结尾时把读过的内容写入缓存，超过单个资源上限时不再记录
+     *
+     * @param path 资源路径
+     * @param in   解密后的输入流
+     * @return 输入流
+     */
+    public InputStream cacheOnRead(String path, InputStream in) {
+        long limit;
+        synchronized (this) {
+            limit = maxBytes / 4;
+        }
+        if (limit <= 0) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b < 0) {
+                    finish();
+                } else if (copy != null) {
+                    copy.write(b);
+                    checkLimit();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n < 0) {
+                    finish();
+                } else if (copy != null) {
+                    copy.write(b, off, n);
+                    checkLimit();
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                //跳过的内容无法缓存
+                copy = null;
+                return in.skip(n);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            private void checkLimit() {
+                if (copy.size() > limit) {
+                    copy = null;
+                }
+            }
+
+            private void finish() {
+                if (copy != null) {
+                    put(path, copy.toByteArray());
+                    copy = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * 淘汰最久未使用的内容，直到能放下指定大小
+     *
+     * @param size 需要放入的字节数
+     */
+    private void evict(long size) {
+        Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+        while (it.hasNext() && usedBytes + size > Math.max(maxBytes, 0)) {
+            usedBytes -= it.next().getValue().length;
+            it.remove();
+        }
+    }
+}
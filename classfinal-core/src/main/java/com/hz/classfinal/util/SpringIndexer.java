@@ -0,0 +1,295 @@
+package com.hz.classfinal.util;
+
+import javassist.ClassPool;
+import javassist.NotFoundException;
+import javassist.bytecode.AccessFlag;
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.InnerClassesAttribute;
+import javassist.bytecode.annotation.Annotation;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 生成 Spring 的候选组件索引 {@code META-INF/spring.components}
+ * <p>
+ * 规则与 spring-context-indexer 相同：类或接口上（包括 @Inherited 继承的）被 {@code @Indexed} 元注解标注的注解、
+ * 自身或父类、接口上直接标注了 {@code @Indexed} 的类型、直接标注的 javax/jakarta 开头的注解都作为 stereotype；
+ * package-info 的 stereotype 为 package-info。只处理顶层和静态内部的普通类和接口，枚举、记录、注解类型不处理。
+ * 注解和父类从 ClassPool 中查找，找不到的忽略。
+ * <p>
+ * classpath 中存在索引时 Spring 只从索引中查找组件，没有写入索引的包中的组件不会被扫描到。
+ *
+ * @author roseboy
+ */
+public class SpringIndexer {
+
+    /**
+     * 索引文件
+     */
+    public static final String INDEX_FILE = "META-INF/spring.components";
+
+    private static final String INDEXED = "org.springframework.stereotype.Indexed";
+    private static final String INHERITED = "java.lang.annotation.Inherited";
+    private static final String PACKAGE_INFO = "package-info";
+    private static final String RECORD = "java.lang.Record";
+
+    //查找注解和父类
+    private final ClassPool pool;
+    //类名 -> 类，找不到的为 null
+    private final Map<String, ClassFile> classFiles = new HashMap<>();
+    //注解 -> 由它得到的 stereotype
+    private final Map<String, Set<String>> annotationStereotypes = new HashMap<>();
+    //类名 -> stereotype
+    private final Map<String, Set<String>> index = new TreeMap<>();
+
+    /**
+     * 构造方法
+     *
+     * @param pool 用于查找注解和父类
+     */
+    public SpringIndexer(ClassPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 加入一个类
+     *
+     * @param bytes class 文件内容
+     * @throws IOException class 格式错误
+     */
+    public void add(byte[] bytes) throws IOException {
+        ClassFile cf = new ClassFile(new DataInputStream(new ByteArrayInputStream(bytes)));
+        String name = cf.getName();
+        if (name.endsWith("." + PACKAGE_INFO)) {
+            put(name.substring(0, name.length() - PACKAGE_INFO.length() - 1), Collections.singleton(PACKAGE_INFO));
+            return;
+        }
+        if (!isClassOrInterface(cf) || !isTopLevelOrStatic(cf)) {
+            return;
+        }
+        Set<String> stereotypes = new TreeSet<>();
+        for (String annotation : annotations(cf)) {
+            if (annotation.startsWith("javax.") || annotation.startsWith("jakarta.")) {
+                stereotypes.add(annotation);
+            }
+        }
+        for (String annotation : allAnnotations(cf)) {
+            stereotypes.addAll(annotationStereotypes(annotation));
+        }
+        collectIndexedTypes(cf, stereotypes, new HashSet<>());
+        if (!stereotypes.isEmpty()) {
+            put(name, stereotypes);
+        }
+    }
+
+    /**
+     * 索引中的类数量
+     *
+     * @return 数量
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 与原有的索引合并，按类名排序输出
+     *
+     * @param existing 原有的索引内容，没有时为 null
+     * @return 索引文件内容
+     * @throws IOException 原有的索引格式错误
+     */
+    public byte[] merge(byte[] existing) throws IOException {
+        Map<String, Set<String>> merged = new TreeMap<>(index);
+        if (existing != null) {
+            Properties props = new Properties();
+            props.load(new ByteArrayInputStream(existing));
+            for (String type : props.stringPropertyNames()) {
+                Set<String> stereotypes = new TreeSet<>();
+                for (String stereotype : props.getProperty(type).split(",")) {
+                    if (!stereotype.trim().isEmpty()) {
+                        stereotypes.add(stereotype.trim());
+                    }
+                }
+                stereotypes.addAll(merged.getOrDefault(type, Collections.emptySet()));
+                merged.put(type, stereotypes);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Set<String>> entry : merged.entrySet()) {
+            sb.append(escape(entry.getKey())).append('=').append(escape(String.join(",", entry.getValue()))).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private void put(String type, Set<String> stereotypes) {
+        index.computeIfAbsent(type, k -> new TreeSet<>()).addAll(stereotypes);
+    }
+
+    /**
+     * 普通类或接口，不是枚举、记录、注解类型
+     */
+    private static boolean isClassOrInterface(ClassFile cf) {
+        return (cf.getAccessFlags() & (AccessFlag.ANNOTATION | AccessFlag.ENUM)) == 0
+                && !RECORD.equals(cf.getSuperclass());
+    }
+
+    /**
+     * 顶层类或静态内部类，局部类和匿名类的外部类为空
+     */
+    private static boolean isTopLevelOrStatic(ClassFile cf) {
+        InnerClassesAttribute inner = (InnerClassesAttribute) cf.getAttribute(InnerClassesAttribute.tag);
+        if (inner == null) {
+            return true;
+        }
+        for (int i = 0; i < inner.tableLength(); i++) {
+            if (cf.getName().equals(inner.innerClass(i))) {
+                return inner.outerClassIndex(i) != 0
+                        && ((inner.accessFlags(i) & AccessFlag.STATIC) != 0 || cf.isInterface());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 类上的注解，包括从父类继承的 @Inherited 注解
+     */
+    private List<String> allAnnotations(ClassFile cf) {
+        List<String> annotations = annotations(cf);
+        Set<String> seen = new HashSet<>();
+        String superName = cf.getSuperclass();
+        while (superName != null && !"java.lang.Object".equals(superName) && seen.add(superName)) {
+            ClassFile superClass = find(superName);
+            if (superClass == null) {
+                break;
+            }
+            for (String annotation : annotations(superClass)) {
+                if (!annotations.contains(annotation) && isInherited(annotation)) {
+                    annotations.add(annotation);
+                }
+            }
+            superName = superClass.getSuperclass();
+        }
+        return annotations;
+    }
+
+    private boolean isInherited(String annotation) {
+        ClassFile cf = find(annotation);
+        return cf != null && annotations(cf).contains(INHERITED);
+    }
+
+    /**
+     * 注解本身被 @Indexed 标注时是 stereotype，再递归查找它的元注解，java.lang 开头的元注解不查找
+     */
+    private Set<String> annotationStereotypes(String annotation) {
+        Set<String> stereotypes = annotationStereotypes.get(annotation);
+        if (stereotypes == null) {
+            stereotypes = new TreeSet<>();
+            collectAnnotationStereotypes(annotation, stereotypes, new HashSet<>());
+            annotationStereotypes.put(annotation, stereotypes);
+        }
+        return stereotypes;
+    }
+
+    private void collectAnnotationStereotypes(String annotation, Set<String> stereotypes, Set<String> seen) {
+        if (!seen.add(annotation)) {
+            return;
+        }
+        ClassFile cf = find(annotation);
+        if (cf == null) {
+            return;
+        }
+        List<String> metas = annotations(cf);
+        if (metas.contains(INDEXED)) {
+            stereotypes.add(annotation);
+        }
+        for (String meta : metas) {
+            if (!meta.startsWith("java.lang")) {
+                collectAnnotationStereotypes(meta, stereotypes, seen);
+            }
+        }
+    }
+
+    /**
+     * 自身、父类、接口上直接标注了 @Indexed 的类型
+     */
+    private void collectIndexedTypes(ClassFile cf, Set<String> stereotypes, Set<String> seen) {
+        if (!seen.add(cf.getName())) {
+            return;
+        }
+        if (annotations(cf).contains(INDEXED)) {
+            stereotypes.add(cf.getName());
+        }
+        List<String> superTypes = new ArrayList<>();
+        if (cf.getSuperclass() != null && !"java.lang.Object".equals(cf.getSuperclass())) {
+            superTypes.add(cf.getSuperclass());
+        }
+        Collections.addAll(superTypes, cf.getInterfaces());
+        for (String superType : superTypes) {
+            ClassFile superClass = find(superType);
+            if (superClass != null) {
+                collectIndexedTypes(superClass, stereotypes, seen);
+            }
+        }
+    }
+
+    /**
+     * 直接标注的注解，包括 CLASS 保留级别的
+     */
+    private static List<String> annotations(ClassFile cf) {
+        List<String> annotations = new ArrayList<>();
+        for (String tag : new String[]{AnnotationsAttribute.visibleTag, AnnotationsAttribute.invisibleTag}) {
+            AnnotationsAttribute attribute = (AnnotationsAttribute) cf.getAttribute(tag);
+            if (attribute != null) {
+                for (Annotation annotation : attribute.getAnnotations()) {
+                    annotations.add(annotation.getTypeName());
+                }
+            }
+        }
+        return annotations;
+    }
+
+    private ClassFile find(String name) {
+        if (classFiles.containsKey(name)) {
+            return classFiles.get(name);
+        }
+        ClassFile cf = null;
+        try {
+            cf = pool.get(name).getClassFile2();
+        } catch (NotFoundException e) {
+            ConsoleLog.debug("Spring 索引找不到类: %s", name);
+        }
+        classFiles.put(name, cf);
+        return cf;
+    }
+
+    /**
+     * properties 文件是 ISO-8859-1 编码，其他字符用 \\u 转义
+     */
+    private static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c < 0x20 || c > 0x7e) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else if (c == '\\' || c == '=' || c == ':' || c == '#' || c == '!' || c == ' ') {
+                sb.append('\\').append(c);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -1,17 +1,32 @@
 package com.hz.classfinal.util;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.*;
 
 /**
  * 系统工具类
  */
 public class SysUtils {
 
+    //Linux 下 DMI 信息目录
+    static final String DMI_DIR = "/sys/class/dmi/id";
+    //Linux 下的机器ID，所有用户可读
+    static final String[] MACHINE_ID_FILES = {"/etc/machine-id", "/var/lib/dbus/machine-id"};
+    //DMI 中所有用户可读的硬件型号，product_uuid、product_serial 等序列号只有 root 可读
+    static final String[] DMI_MODEL_FILES = {"sys_vendor", "product_name", "board_vendor", "board_name"};
+    //采集机器信息的超时时间(秒)
+    static final long PROBE_TIMEOUT = 10;
+    //机器码，进程内只计算一次
+    private static volatile Future<char[][]> machineCodes;
+
 
     /**
      * 运行命令
@@ -78,7 +93,7 @@ public class SysUtils {
     }
 
     /**
-     * 获取mac地址
+     * 获取mac地址，只取有非本地地址的网卡
      *
      * @return mac 列表
      */
@@ -89,28 +104,26 @@ public class SysUtils {
             java.util.Enumeration<NetworkInterface> en = NetworkInterface.getNetworkInterfaces();
             while (en.hasMoreElements()) {
                 NetworkInterface iface = en.nextElement();
-                List<InterfaceAddress> addrs = iface.getInterfaceAddresses();
-                for (InterfaceAddress addr : addrs) {
+                boolean hasAddress = false;
+                for (InterfaceAddress addr : iface.getInterfaceAddresses()) {
                     InetAddress ip = addr.getAddress();
-                    if (ip.isLinkLocalAddress()) {//本地的不要
-                        continue;
-                    }
-                    NetworkInterface network = NetworkInterface.getByInetAddress(ip);
-                    if (network == null) {
-                        continue;
-                    }
-                    byte[] mac = network.getHardwareAddress();
-                    if (mac == null) {
-                        continue;
+                    if (!ip.isLinkLocalAddress()) {//本地的不要
+                        hasAddress = true;
+                        break;
                     }
+                }
+                //地址所在的网卡就是当前网卡，不用再按地址查找一遍所有网卡
+                byte[] mac = hasAddress ? iface.getHardwareAddress() : null;
+                if (mac == null) {
+                    continue;
+                }
 
-                    sb.delete(0, sb.length());
-                    for (int i = 0; i < mac.length; i++) {
-                        sb.append(String.format("%02X%s", mac[i], (i < mac.length - 1) ? "-" : ""));
-                    }
-                    if (!list.contains(sb.toString())) {
-                        list.add(sb.toString());
-                    }
+                sb.delete(0, sb.length());
+                for (int i = 0; i < mac.length; i++) {
+                    sb.append(String.format("%02X%s", mac[i], (i < mac.length - 1) ? "-" : ""));
+                }
+                if (!list.contains(sb.toString())) {
+                    list.add(sb.toString());
                 }
             }
         } catch (Exception e) {
@@ -120,7 +133,7 @@ public class SysUtils {
     }
 
     /**
-     * 获取cpu序列号
+     * 获取cpu序列号，Linux 下普通用户读不到序列号，使用机器ID
      *
      * @return 序列号
      */
@@ -130,10 +143,7 @@ public class SysUtils {
             String str = runCmd("wmic cpu get ProcessorId", 2);
             return str;
         } else if (sysName.contains("Linux")) {
-            String str = runCmd("dmidecode |grep -A16 \"Processor Information$\"", "ID");
-            if (str != null) {
-                return str.substring(str.indexOf(":")).trim();
-            }
+            return readMachineId();
         } else if (sysName.contains("Mac")) {
             String str = runCmd("system_profiler SPHardwareDataType", "Serial Number");
             if (str != null) {
@@ -145,7 +155,7 @@ public class SysUtils {
 
 
     /**
-     * 获取硬盘序列号
+     * 获取硬盘序列号，Linux 下普通用户读不到序列号，使用 DMI 中的硬件型号
      *
      * @return 硬盘序列号
      */
@@ -155,10 +165,7 @@ public class SysUtils {
             String str = runCmd("wmic path win32_physicalmedia get serialnumber", 2);
             return str;
         } else if (sysName.contains("Linux")) {
-            String str = runCmd("dmidecode |grep -A16 \"System Information$\"", "Serial Number");
-            if (str != null) {
-                return str.substring(str.indexOf(":")).trim();
-            }
+            return readDmiModel();
         } else if (sysName.contains("Mac")) {
             String str = runCmd("system_profiler SPStorageDataType", "Volume UUID");
             if (str != null) {
@@ -168,15 +175,162 @@ public class SysUtils {
         return "";
     }
 
+    /**
+     * 读取 Linux 下的机器ID，取第一个存在的文件
+     *
+     * @return 机器ID，都不存在时返回空字串
+     */
+    static String readMachineId() {
+        for (String path : MACHINE_ID_FILES) {
+            File file = new File(path);
+            if (file.exists()) {
+                return readIdFile(file);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 读取 Linux 下 DMI 中的硬件型号，没有 DMI 信息的机器(如部分 ARM 设备)为空字串
+     *
+     * @return 硬件型号
+     */
+    static String readDmiModel() {
+        StringBuilder sb = new StringBuilder();
+        boolean found = false;
+        for (String name : DMI_MODEL_FILES) {
+            File file = new File(DMI_DIR, name);
+            if (file.exists()) {
+                sb.append(readIdFile(file));
+                found = true;
+            }
+            sb.append('|');
+        }
+        return found ? sb.toString() : "";
+    }
+
+    /**
+     * 读取一个机器信息文件。文件存在却读不到时报错，不能按空处理，否则机器码会随运行的用户变化
+     *
+     * @param file 文件
+     * @return 内容
+     */
+    static String readIdFile(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+        } catch (Exception e) {
+            throw new IllegalStateException("无法读取机器信息: " + file + " " + e.getMessage(), e);
+        }
+    }
+
     /**
      * 生成机器码
      *
      * @return 机器码
      */
     public static char[] makeMarchinCode() {
-        char[] c1 = EncryptUtils.md5(getMacList().toString().toCharArray());
-        char[] c2 = EncryptUtils.md5(getCPUSerialNumber().toCharArray());
-        char[] c3 = EncryptUtils.md5(getHardDiskSerialNumber().toCharArray());
+        return makeMarchinCodes()[0];
+    }
+
+    /**
+     * 生成当前机器所有可能的机器码，第一个是当前版本的机器码，后面是兼容旧版本的机器码。
+     * <p>
+     * 旧版本在 Linux 下通过管道调用 dmidecode，Runtime.exec 不支持管道，CPU 和硬盘序列号总是空的，
+     * 这样的机器码只绑定了网卡；兼容的机器码只能匹配用这种机器码加密的 jar，匹配时会提示重新绑定。
+     * <p>
+     * 只有 Linux 下完全不启动进程；Windows 下仍调用 wmic，macOS 下仍调用 system_profiler，
+     * 都在后台线程中执行，不阻塞类加载。
+     * 结果在进程内缓存，首次调用会等待后台采集完成。采集失败或超时不缓存，下次调用重新采集
+     *
+     * @return 机器码
+     * @throws IllegalStateException 采集失败或超时
+     */
+    public static char[][] makeMarchinCodes() {
+        Future<char[][]> codes = prefetchMarchinCode();
+        try {
+            return codes.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            synchronized (SysUtils.class) {
+                if (machineCodes == codes) {
+                    machineCodes = null;
+                }
+            }
+            Throwable cause = e.getCause();
+            throw cause instanceof IllegalStateException ? (IllegalStateException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 在后台线程开始采集机器信息，不阻塞调用线程
+     *
+     * @return 机器码
+     */
+    public static Future<char[][]> prefetchMarchinCode() {
+        Future<char[][]> codes = machineCodes;
+        if (codes != null) {
+            return codes;
+        }
+        synchronized (SysUtils.class) {
+            if (machineCodes == null) {
+                FutureTask<char[][]> task = new FutureTask<>(SysUtils::probeMarchinCodes);
+                Thread thread = new Thread(task, "classfinal-machine-code");
+                thread.setDaemon(true);
+                thread.start();
+                machineCodes = task;
+            }
+            return machineCodes;
+        }
+    }
+
+    /**
+     * 并行采集 mac、CPU、硬盘信息，任意一项失败或超时都报错，不能按空处理，否则会得到不同的机器码
+     *
+     * @return 机器码
+     */
+    private static char[][] probeMarchinCodes() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(3, r -> {
+            Thread thread = new Thread(r, "classfinal-machine-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<String> mac = executor.submit(() -> getMacList().toString());
+            Future<String> cpu = executor.submit(SysUtils::getCPUSerialNumber);
+            Future<String> disk = executor.submit(SysUtils::getHardDiskSerialNumber);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(PROBE_TIMEOUT);
+            String macs = getOrFail(mac, deadline, "mac");
+            char[] code = toMarchinCode(macs, getOrFail(cpu, deadline, "cpu"), getOrFail(disk, deadline, "disk"));
+            if (!System.getProperty("os.name").contains("Linux")) {
+                return new char[][]{code};
+            }
+            char[] legacy = toMarchinCode(macs, "", "");
+            return StrUtils.equals(code, legacy) ? new char[][]{code} : new char[][]{code, legacy};
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String getOrFail(Future<String> future, long deadline, String name) throws InterruptedException {
+        try {
+            String value = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return value == null ? "" : value;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IllegalStateException ? (IllegalStateException) cause
+                    : new IllegalStateException("采集机器信息失败: " + name, cause);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new IllegalStateException("采集机器信息超时: " + name + "，超过" + PROBE_TIMEOUT + "秒");
+        }
+    }
+
+    private static char[] toMarchinCode(String macs, String cpu, String disk) {
+        char[] c1 = EncryptUtils.md5(macs.toCharArray());
+        char[] c2 = EncryptUtils.md5(cpu.toCharArray());
+        char[] c3 = EncryptUtils.md5(disk.toCharArray());
         char[] chars = StrUtils.merger(c1, c2, c3);
         for (int i = 0; i < chars.length; i++) {
             chars[i] = Character.toUpperCase(chars[i]);
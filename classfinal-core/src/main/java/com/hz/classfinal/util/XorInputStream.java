@@ -0,0 +1,82 @@
+package com.hz.classfinal.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 边读边异或解密的输入流
+ * <p>
+ * 第 i 个字节与 {@code key[i % key.length]} 异或，密钥长度必须是2的幂；
+ * 不缓存内容，解密大文件时内存占用固定。
+ *
+ * @author roseboy
+ * @see EncryptUtils#xorKey(char[], char[])
+ */
+public class XorInputStream extends FilterInputStream {
+
+    private final byte[] key;
+    private final int mask;
+    //已读取的字节数
+    private long position = 0;
+
+    /**
+     * 构造方法
+     *
+     * @param in  密文输入流
+     * @param key 密钥，长度为2的幂
+     */
+    public XorInputStream(InputStream in, byte[] key) {
+        super(in);
+        if (key.length == 0 || (key.length & (key.length - 1)) != 0) {
+            throw new IllegalArgumentException("密钥长度必须是2的幂");
+        }
+        this.key = key;
+        this.mask = key.length - 1;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return b;
+        }
+        return (b ^ key[(int) (position++ & mask)]) & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n <= 0) {
+            return n;
+        }
+        int k = (int) (position & mask);
+        for (int i = off, end = off + n; i < end; i++) {
+            b[i] ^= key[k];
+            k = (k + 1) & mask;
+        }
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
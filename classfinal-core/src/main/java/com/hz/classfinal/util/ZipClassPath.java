@@ -0,0 +1,157 @@
+package com.hz.classfinal.util;
+
+import com.hz.classfinal.Constants;
+import javassist.ClassPath;
+import javassist.NotFoundException;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 直接从 jar/war 包中读取类的 javassist ClassPath，不释放文件
+ * <p>
+ * 查找包根目录、{@code BOOT-INF/classes}、{@code WEB-INF/classes} 下的类，以及包内所有依赖 jar 中的类。
+ * 依赖 jar 第一次查找时建立一次类名索引，读取某个依赖 jar 的类时把这个 jar 的所有类读入内存。
+ *
+ * @author roseboy
+ */
+public class ZipClassPath implements ClassPath, Closeable {
+
+    //类所在的根目录
+    private static final String[] ROOTS = {"", "BOOT-INF/classes/", "WEB-INF/classes/"};
+
+    //jar/war 包
+    private final ZipFile zip;
+    //包的 URI，用于生成类的 URL
+    private final String uri;
+    //依赖 jar 中的 class 文件名 -> 依赖 jar 的文件名，第一次查找时建立
+    private Map<String, String> nestedIndex;
+    //依赖 jar 的文件名 -> (class 文件名 -> 内容)
+    private final Map<String, Map<String, byte[]>> nestedClasses = new HashMap<>();
+
+    /**
+     * 构造方法
+     *
+     * @param zip jar/war 包
+     * @throws IOException IO异常
+     */
+    public ZipClassPath(File zip) throws IOException {
+        this.zip = new ZipFile(zip);
+        this.uri = zip.toURI().toString();
+    }
+
+    @Override
+    public synchronized URL find(String classname) {
+        String entryName = toEntryName(classname);
+        String root = findRoot(entryName);
+        String location;
+        if (root != null) {
+            location = root + entryName;
+        } else {
+            String jarName = nestedIndex().get(entryName);
+            if (jarName == null) {
+                return null;
+            }
+            location = jarName + "!/" + entryName;
+        }
+        try {
+            return new URL("jar:" + uri + "!/" + location);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized InputStream openClassfile(String classname) throws NotFoundException {
+        String entryName = toEntryName(classname);
+        try {
+            String root = findRoot(entryName);
+            if (root != null) {
+                return zip.getInputStream(zip.getEntry(root + entryName));
+            }
+            String jarName = nestedIndex().get(entryName);
+            if (jarName != null) {
+                Map<String, byte[]> classes = nestedClasses.get(jarName);
+                if (classes == null) {
+                    classes = readClasses(jarName);
+                    nestedClasses.put(jarName, classes);
+                }
+                return new ByteArrayInputStream(classes.get(entryName));
+            }
+        } catch (IOException e) {
+            throw new NotFoundException(classname, e);
+        }
+        throw new NotFoundException(classname);
+    }
+
+    private String findRoot(String entryName) {
+        for (String root : ROOTS) {
+            if (zip.getEntry(root + entryName) != null) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 遍历一次所有依赖 jar，记录每个 class 所在的 jar，同名的类以第一个为准
+     */
+    private Map<String, String> nestedIndex() {
+        if (nestedIndex != null) {
+            return nestedIndex;
+        }
+        nestedIndex = new HashMap<>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory() || !entry.getName().endsWith(Constants.JAR_EXT)) {
+                continue;
+            }
+            try (ZipInputStream zis = new ZipInputStream(zip.getInputStream(entry))) {
+                ZipEntry nested;
+                while ((nested = zis.getNextEntry()) != null) {
+                    if (nested.getName().endsWith(Constants.CLASS_EXT)) {
+                        nestedIndex.putIfAbsent(nested.getName(), entry.getName());
+                    }
+                }
+            } catch (IOException e) {
+                ConsoleLog.debug("读取依赖 jar 失败: %s %s", entry.getName(), e.getMessage());
+            }
+        }
+        return nestedIndex;
+    }
+
+    private Map<String, byte[]> readClasses(String jarName) throws IOException {
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        try (ZipInputStream zis = new ZipInputStream(zip.getInputStream(zip.getEntry(jarName)))) {
+            ZipEntry nested;
+            while ((nested = zis.getNextEntry()) != null) {
+                if (nested.getName().endsWith(Constants.CLASS_EXT)) {
+                    classes.putIfAbsent(nested.getName(), IoUtils.readRemaining(zis));
+                }
+            }
+        }
+        return classes;
+    }
+
+    private static String toEntryName(String classname) {
+        return classname.replace('.', '/') + Constants.CLASS_EXT;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
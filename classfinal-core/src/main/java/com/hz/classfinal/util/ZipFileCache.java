@@ -0,0 +1,249 @@
+package com.hz.classfinal.util;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 压缩文件句柄缓存
+ * <p>
+ * 同一个 jar/war 只打开一次 {@link ZipFile}，所有类加载线程共享，避免每次读取都重新解析中央目录；
+ * 句柄空闲超过指定时间后由后台线程关闭，启动完成后释放内存。
+ *
+ * @author roseboy
+ */
+public class ZipFileCache {
+
+    //默认空闲关闭时间(毫秒)
+    public static final long DEFAULT_IDLE_MILLIS = 60 * 1000L;
+    //已打开的句柄
+    private static final Map<String, Handle> HANDLES = new ConcurrentHashMap<>();
+    //空闲关闭时间，小于等于0时不关闭
+    private static volatile long idleMillis = DEFAULT_IDLE_MILLIS;
+    //关闭空闲句柄的线程
+    private static volatile ScheduledExecutorService cleaner;
+    //打开 jar 的次数
+    private static final AtomicLong OPEN_COUNT = new AtomicLong();
+
+    /**
+     * 设置句柄空闲关闭时间
+     *
+     * @param millis 毫秒，小于等于0时不关闭
+     */
+    public static void setIdleMillis(long millis) {
+        idleMillis = millis;
+    }
+
+    /**
+     * 读取压缩文件内指定文件的内容
+     *
+     * @param zip      压缩文件
+     * @param fileName 内部文件名
+     * @return 字节数组，文件不存在返回 null
+     * @throws IOException IO异常
+     */
+    public static byte[] readEntry(File zip, String fileName) throws IOException {
+        Handle handle = acquire(zip);
+        if (handle == null) {
+            return null;
+        }
+        try {
+            ZipEntry entry = handle.zipFile.getEntry(fileName);
+            if (entry == null) {
+                return null;
+            }
+            return IoUtils.readBytes(handle.zipFile.getInputStream(entry));
+        } finally {
+            handle.release();
+        }
+    }
+
+    /**
+     * 打开压缩文件内指定文件的输入流，流关闭前句柄不会被关闭
+     *
+     * @param zip      压缩文件
+     * @param fileName 内部文件名
+     * @return 输入流，文件不存在返回 null
+     * @throws IOException IO异常
+     */
+    public static InputStream openEntry(File zip, String fileName) throws IOException {
+        Handle handle = acquire(zip);
+        if (handle == null) {
+            return null;
+        }
+        try {
+            ZipEntry entry = handle.zipFile.getEntry(fileName);
+            if (entry == null) {
+                handle.release();
+                return null;
+            }
+            return new FilterInputStream(handle.zipFile.getInputStream(entry)) {
+                private boolean closed = false;
+
+                @Override
+                public void close() throws IOException {
+                    synchronized (this) {
+                        if (closed) {
+                            return;
+                        }
+                        closed = true;
+                    }
+                    try {
+                        super.close();
+                    } finally {
+                        handle.release();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            handle.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开 jar 的次数，句柄被关闭后再次读取会重新打开
+     *
+     * @return 次数
+     */
+    public static long getOpenCount() {
+        return OPEN_COUNT.get();
+    }
+
+    /**
+     * 关闭所有句柄
+     */
+    public static void closeAll() {
+        for (Map.Entry<String, Handle> entry : HANDLES.entrySet()) {
+            if (entry.getValue().closeIfIdle(Long.MAX_VALUE, 0)) {
+                HANDLES.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 获取句柄并增加引用计数，使用完必须调用 {@link Handle#release()}
+     *
+     * @param zip 压缩文件
+     * @return 句柄，文件不存在返回 null
+     * @throws IOException IO异常
+     */
+    private static Handle acquire(File zip) throws IOException {
+        if (!IoUtils.exists(zip)) {
+            return null;
+        }
+        String key = zip.getAbsolutePath();
+        startCleaner();
+        while (true) {
+            Handle handle;
+            try {
+                handle = HANDLES.computeIfAbsent(key, k -> {
+                    try {
+                        OPEN_COUNT.incrementAndGet();
+                        return new Handle(new ZipFile(k));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (handle.retain()) {
+                return handle;
+            }
+            //句柄刚好被关闭，移除后重新打开
+            HANDLES.remove(key, handle);
+        }
+    }
+
+    /**
+     * 启动关闭空闲句柄的后台线程
+     */
+    private static void startCleaner() {
+        long idle = idleMillis;
+        if (cleaner != null || idle <= 0) {
+            return;
+        }
+        synchronized (ZipFileCache.class) {
+            if (cleaner != null) {
+                return;
+            }
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "classfinal-zip-cleaner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(idle / 2, 1000L);
+            executor.scheduleWithFixedDelay(ZipFileCache::closeIdle, period, period, TimeUnit.MILLISECONDS);
+            cleaner = executor;
+        }
+    }
+
+    /**
+     * 关闭空闲的句柄
+     */
+    private static void closeIdle() {
+        long idle = idleMillis;
+        if (idle <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Handle> entry : HANDLES.entrySet()) {
+            if (entry.getValue().closeIfIdle(now, idle)) {
+                HANDLES.remove(entry.getKey(), entry.getValue());
+                ConsoleLog.debug("关闭空闲jar: %s", entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * 带引用计数的 ZipFile 句柄
+     */
+    static class Handle {
+        private final ZipFile zipFile;
+        //正在使用的线程数
+        private int refs = 0;
+        //最后访问时间
+        private long lastAccess = System.currentTimeMillis();
+        private boolean closed = false;
+
+        Handle(ZipFile zipFile) {
+            this.zipFile = zipFile;
+        }
+
+        synchronized boolean retain() {
+            if (closed) {
+                return false;
+            }
+            refs++;
+            return true;
+        }
+
+        synchronized void release() {
+            refs--;
+            lastAccess = System.currentTimeMillis();
+        }
+
+        synchronized boolean closeIfIdle(long now, long idle) {
+            if (closed) {
+                return true;
+            }
+            if (refs > 0 || now - lastAccess < idle) {
+                return false;
+            }
+            closed = true;
+            IoUtils.close(zipFile);
+            return true;
+        }
+    }
+}
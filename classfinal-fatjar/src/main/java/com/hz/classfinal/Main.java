@@ -6,6 +6,7 @@ import com.hz.classfinal.util.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 
@@ -17,6 +18,9 @@ import java.util.Scanner;
  * @author roseboy
  */
 public class Main {
+    //信封加密的 RSA 密钥长度
+    static final int RSA_KEY_LENGTH = 2048;
+
     /**
      * 入口方法
      *
@@ -34,15 +38,28 @@ public class Main {
         cmd.addOption("libjars", true, "jar/war lib下的jar(可为空,多个用\",\"分割)");
         cmd.addOption("classpath", true, "依赖jar包目录(可为空,多个用\",\"分割)");
         cmd.addOption("cfgfiles", true, "需要加密的配置文件(可为空,多个用\",\"分割)");
+        cmd.addOption("pack", false, "加密后的文件合并成一个包");
+        cmd.addOption("compress", false, "加密前用预置字典压缩");
+        cmd.addOption("stream", false, "流式加密，不释放到临时目录");
+        cmd.addOption("threads", true, "并行加密和清空方法体的线程数");
+        cmd.addOption("compact", false, "精简清空方法体后的类");
+        cmd.addOption("springindex", false, "生成Spring组件索引META-INF/spring.components");
+        cmd.addOption("type", true, "加密方式 md5/aes/aes_gcm 或已注册的算法ID");
+        cmd.addOption("pubkey", true, "信封加密的RSA公钥文件");
         cmd.addOption("Y", false, "无需确认");
         cmd.addOption("debug", false, "调试模式");
         cmd.addOption("C", false, "生成机器码");
+        cmd.addOption("K", false, "生成信封加密的RSA密钥对");
         cmd.parse(args);
 
         if (cmd.hasOption("C")) {
             makeCode();
             return;
         }
+        if (cmd.hasOption("K")) {
+            makeKeyPair();
+            return;
+        }
 
         //全部参数(需要加密的class路径,lib下的jar,包名,排除的class,依赖jar包路径,密码,机器码,需要加密的配置文件)
         String path = null, libjars, packages, excludeClass, classpath, password = null, code, cfgfiles;
@@ -134,6 +151,33 @@ public class Main {
         encryptor.setExcludeClass(excludeClassList);
         encryptor.setClassPath(classPathList);
         encryptor.setCfgfiles(cfgFileList);
+        encryptor.setPack(cmd.hasOption("pack"));
+        encryptor.setCompress(cmd.hasOption("compress"));
+        encryptor.setStream(cmd.hasOption("stream"));
+        encryptor.setCompact(cmd.hasOption("compact"));
+        encryptor.setSpringIndex(cmd.hasOption("springindex"));
+        String threads = cmd.getOptionValue("threads");
+        if (StrUtils.isNotEmpty(threads)) {
+            try {
+                encryptor.setThreads(Integer.parseInt(threads.trim()));
+            } catch (NumberFormatException e) {
+                ConsoleLog.log("ERROR: 线程数错误: " + threads);
+                return;
+            }
+        }
+        String pubKey = cmd.getOptionValue("pubkey");
+        if (StrUtils.isNotEmpty(pubKey)) {
+            encryptor.setPublicKey(IoUtils.readUtf8(new File(pubKey)).trim().toCharArray());
+        }
+        String type = cmd.getOptionValue("type");
+        if (StrUtils.isNotEmpty(type)) {
+            try {
+                encryptor.setCipher(type.trim());
+            } catch (IllegalArgumentException e) {
+                ConsoleLog.log("ERROR: " + e.getMessage());
+                return;
+            }
+        }
         try {
             String result = encryptor.doEncryptJar();
             ConsoleLog.log("加密完成，请牢记密码！");
@@ -158,4 +202,21 @@ public class Main {
         ConsoleLog.log("==>" + file.getAbsolutePath());
         ConsoleLog.println();
     }
+
+    /**
+     * 生成信封加密的 RSA 密钥对，公钥用于加密，私钥在启动时使用
+     */
+    public static void makeKeyPair() throws Exception {
+        String path = JarUtils.getRootPath();
+        path = path.substring(0, path.lastIndexOf("/") + 1);
+
+        Map<Integer, String> keyPair = EncryptUtils.genRSAKeyPair(RSA_KEY_LENGTH);
+        File publicFile = new File(path, "classfinal-public.key");
+        File privateFile = new File(path, "classfinal-private.key");
+        IoUtils.writeUtf8(publicFile, keyPair.get(0));
+        IoUtils.writeUtf8(privateFile, keyPair.get(1));
+        ConsoleLog.log("公钥(加密时 -pubkey)==>" + publicFile.getAbsolutePath());
+        ConsoleLog.log("私钥(启动时 -prikey)==>" + privateFile.getAbsolutePath());
+        ConsoleLog.println();
+    }
 }
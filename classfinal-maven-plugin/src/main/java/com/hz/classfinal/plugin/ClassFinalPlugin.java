@@ -3,6 +3,7 @@ package com.hz.classfinal.plugin;
 
 import com.hz.classfinal.Constants;
 import com.hz.classfinal.JarEncryptor;
+import com.hz.classfinal.util.IoUtils;
 import com.hz.classfinal.util.StrUtils;
 import org.apache.maven.model.Build;
 import org.apache.maven.plugin.AbstractMojo;
@@ -15,6 +16,7 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -71,6 +73,54 @@ public class ClassFinalPlugin extends AbstractMojo {
     @Parameter
     private String classpath;
 
+    /**
+     * 加密后的文件合并成一个包
+     */
+    @Parameter(defaultValue = "false")
+    private Boolean pack;
+
+    /**
+     * 加密前用预置字典压缩
+     */
+    @Parameter(defaultValue = "false")
+    private Boolean compress;
+
+    /**
+     * 流式加密，不释放到临时目录
+     */
+    @Parameter(defaultValue = "false")
+    private Boolean stream;
+
+    /**
+     * 并行加密和清空方法体的线程数，小于1时使用全部CPU核数
+     */
+    @Parameter(defaultValue = "1")
+    private Integer threads;
+
+    /**
+     * 精简清空方法体后的类
+     */
+    @Parameter(defaultValue = "false")
+    private Boolean compact;
+
+    /**
+     * 生成 Spring 组件索引 META-INF/spring.components
+     */
+    @Parameter(defaultValue = "false")
+    private Boolean springindex;
+
+    /**
+     * 加密方式 md5/aes/aes_gcm 或已注册的算法ID
+     */
+    @Parameter
+    private String type;
+
+    /**
+     * 信封加密的RSA公钥文件
+     */
+    @Parameter
+    private String pubkey;
+
     /**
      * 调试模式
      */
@@ -106,6 +156,26 @@ public class ClassFinalPlugin extends AbstractMojo {
         encryptor.setExcludeClass(excludeClassList);
         encryptor.setClassPath(classPathList);
         encryptor.setCfgfiles(cfgFileList);
+        encryptor.setPack(pack);
+        encryptor.setCompress(compress);
+        encryptor.setStream(stream);
+        encryptor.setThreads(threads);
+        encryptor.setCompact(compact);
+        encryptor.setSpringIndex(springindex);
+        if (StrUtils.isNotEmpty(pubkey)) {
+            try {
+                encryptor.setPublicKey(IoUtils.readUtf8(new File(pubkey)).trim().toCharArray());
+            } catch (IOException e) {
+                throw new MojoExecutionException("读取公钥失败: " + pubkey, e);
+            }
+        }
+        if (StrUtils.isNotEmpty(type)) {
+            try {
+                encryptor.setCipher(type.trim());
+            } catch (IllegalArgumentException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+        }
 
         try {
             String path = encryptor.doEncryptJar();